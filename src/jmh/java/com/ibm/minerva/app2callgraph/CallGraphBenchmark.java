@@ -0,0 +1,75 @@
+/*
+Copyright IBM Corporation 2023
+
+Licensed under the Apache Public License 2.0, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ibm.minerva.app2callgraph;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ibm.minerva.app2callgraph.utils.AnalysisUtils;
+import com.ibm.wala.cast.ir.ssa.AstIRFactory;
+import com.ibm.wala.ipa.callgraph.AnalysisCacheImpl;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.CallGraphBuilderCancelException;
+import com.ibm.wala.ipa.callgraph.Entrypoint;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.ipa.cha.IClassHierarchy;
+
+/**
+ * Call graph construction in each context mode. Every invocation starts from
+ * an empty IR cache, as a run does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CallGraphBenchmark {
+
+  @Param({ "daytrader7", "daytrader8", "plantsbywebsphere" })
+  public String app;
+
+  @Param({ "rta", "zero", "zero-one" })
+  public String mode;
+
+  private IClassHierarchy cha;
+  private Iterable<Entrypoint> entryPoints;
+
+  @Setup
+  public void setUp() throws IOException, URISyntaxException, ClassHierarchyException {
+    cha = DemoApps.classHierarchy(app);
+    entryPoints = AnalysisUtils.getEntryPoints(cha);
+  }
+
+  @Benchmark
+  public CallGraph makeCallGraph() throws CallGraphBuilderCancelException {
+    AnalysisOptions options = CallGraphAnalysis.makeAnalysisOptions(entryPoints);
+    AnalysisCacheImpl cache = new AnalysisCacheImpl(AstIRFactory.makeDefaultFactory(), options.getSSAOptions());
+    return CallGraphAnalysis.makeBuilder(mode, options, cache, cha).makeCallGraph(options, null);
+  }
+}
@@ -0,0 +1,79 @@
+/*
+Copyright IBM Corporation 2023
+
+Licensed under the Apache Public License 2.0, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ibm.minerva.app2callgraph;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+
+import com.ibm.minerva.app2callgraph.utils.AnalysisUtils;
+import com.ibm.minerva.app2callgraph.utils.Log;
+import com.ibm.minerva.app2callgraph.utils.ScopeUtils;
+import com.ibm.wala.cast.ir.ssa.AstIRFactory;
+import com.ibm.wala.cast.java.translator.jdt.ecj.ECJClassLoaderFactory;
+import com.ibm.wala.ipa.callgraph.AnalysisCacheImpl;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.CallGraphBuilderCancelException;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.ipa.cha.ClassHierarchyFactory;
+import com.ibm.wala.ipa.cha.IClassHierarchy;
+
+/**
+ * The demo applications in etc/demo and the setup the benchmarks share. The
+ * directory is taken from the app2callgraph.demo system property, which the
+ * build sets.
+ */
+final class DemoApps {
+
+  private DemoApps() {
+  }
+
+  /** @return String : The binary (*.ear, *.war) of the application. */
+  static String input(String app) {
+    File[] binaries = new File(dir(app), "binary").listFiles(File::isFile);
+    if (binaries == null || binaries.length != 1) {
+      throw new IllegalStateException("Expected one binary in " + new File(dir(app), "binary") + ".");
+    }
+    return binaries[0].getPath();
+  }
+
+  /** @return String : The directory of the application's dependencies. */
+  static String dependencies(String app) {
+    return new File(dir(app), "dependencies").getPath();
+  }
+
+  static AnalysisScope scope(String app) throws IOException, URISyntaxException {
+    Log.setVerbosity(false);
+    return ScopeUtils.createScope(input(app), dependencies(app));
+  }
+
+  static IClassHierarchy classHierarchy(String app)
+      throws IOException, URISyntaxException, ClassHierarchyException {
+    AnalysisScope scope = scope(app);
+    return ClassHierarchyFactory.make(scope, new ECJClassLoaderFactory(scope.getExclusions()));
+  }
+
+  /** Build a call graph the way a run of the given context mode does. */
+  static CallGraph callGraph(IClassHierarchy cha, String ctxMode) throws CallGraphBuilderCancelException {
+    AnalysisOptions options = CallGraphAnalysis.makeAnalysisOptions(AnalysisUtils.getEntryPoints(cha));
+    AnalysisCacheImpl cache = new AnalysisCacheImpl(AstIRFactory.makeDefaultFactory(), options.getSSAOptions());
+    return CallGraphAnalysis.makeBuilder(ctxMode, options, cache, cha).makeCallGraph(options, null);
+  }
+
+  private static File dir(String app) {
+    return new File(System.getProperty("app2callgraph.demo", "etc/demo"), app);
+  }
+}
@@ -0,0 +1,83 @@
+/*
+Copyright IBM Corporation 2023
+
+Licensed under the Apache Public License 2.0, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ibm.minerva.app2callgraph;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ibm.minerva.app2callgraph.entities.ClassGraph;
+import com.ibm.minerva.app2callgraph.utils.ClassMetricsTable;
+import com.ibm.minerva.app2callgraph.utils.Neo4jCsvWriter;
+import com.ibm.wala.ipa.callgraph.CallGraphBuilderCancelException;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+
+/** Saving the class graph of the RTA call graph in each output format. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ExportBenchmark {
+
+  @Param({ "daytrader7", "daytrader8", "plantsbywebsphere" })
+  public String app;
+
+  @Param({ "json", "neo4j-csv", "binary" })
+  public String format;
+
+  private ClassGraph graph;
+  private File outDir;
+
+  @Setup
+  public void setUp()
+      throws IOException, URISyntaxException, ClassHierarchyException, CallGraphBuilderCancelException {
+    graph = CallGraphAnalysis.getClassGraph(DemoApps.callGraph(DemoApps.classHierarchy(app), "rta"),
+        new ClassMetricsTable());
+    outDir = Files.createTempDirectory("app2callgraph-jmh").toFile();
+  }
+
+  @TearDown
+  public void tearDown() {
+    FileUtils.deleteQuietly(outDir);
+  }
+
+  @Benchmark
+  public void saveCallGraph() throws IOException {
+    if (format.equals("neo4j-csv")) {
+      Neo4jCsvWriter.write(graph, new File(outDir, "call_graph_rta"));
+    } else if (format.equals("binary")) {
+      CallGraphAnalysis.saveBinaryGraph(graph, outDir.getPath(), "call_graph_rta.bin", null);
+    } else {
+      CallGraphAnalysis.saveGraph(graph, outDir.getPath(), "call_graph_rta.json", null);
+    }
+  }
+}
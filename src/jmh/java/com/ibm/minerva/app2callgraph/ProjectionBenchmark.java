@@ -0,0 +1,72 @@
+/*
+Copyright IBM Corporation 2023
+
+Licensed under the Apache Public License 2.0, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ibm.minerva.app2callgraph;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ibm.minerva.app2callgraph.entities.ClassGraph;
+import com.ibm.minerva.app2callgraph.utils.ClassMetricsTable;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.CallGraphBuilderCancelException;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+
+/**
+ * Projection of the RTA call graph onto classes, class metrics included. This
+ * is the phase that used to build the JGraphT graph (getDefaultDirectedGraph).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ProjectionBenchmark {
+
+  @Param({ "daytrader7", "daytrader8", "plantsbywebsphere" })
+  public String app;
+
+  @Param({ "entrypoints", "full" })
+  public String projection;
+
+  // Threads of the full projection; the entrypoint projection ignores it.
+  @Param({ "1", "4", "16" })
+  public int threads;
+
+  private CallGraph callGraph;
+
+  @Setup
+  public void setUp()
+      throws IOException, URISyntaxException, ClassHierarchyException, CallGraphBuilderCancelException {
+    callGraph = DemoApps.callGraph(DemoApps.classHierarchy(app), "rta");
+  }
+
+  @Benchmark
+  public ClassGraph project() {
+    return CallGraphAnalysis.project(callGraph, new ClassMetricsTable(), projection, threads);
+  }
+}
@@ -0,0 +1,86 @@
+/*
+Copyright IBM Corporation 2023
+
+Licensed under the Apache Public License 2.0, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ibm.minerva.app2callgraph;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ibm.minerva.app2callgraph.utils.JarUtils;
+import com.ibm.minerva.app2callgraph.utils.Log;
+import com.ibm.minerva.app2callgraph.utils.ScopeUtils;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+
+/** Scope creation and archive extraction. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ScopeBenchmark {
+
+  @Param({ "daytrader7", "daytrader8", "plantsbywebsphere" })
+  public String app;
+
+  private String input;
+  private String dependencies;
+  private Path workDir;
+
+  @Setup
+  public void setUp() throws IOException {
+    Log.setVerbosity(false);
+    input = DemoApps.input(app);
+    dependencies = DemoApps.dependencies(app);
+    workDir = Files.createTempDirectory("app2callgraph-jmh");
+  }
+
+  @TearDown
+  public void tearDown() {
+    FileUtils.deleteQuietly(workDir.toFile());
+  }
+
+  @Benchmark
+  public AnalysisScope createScope() throws IOException, URISyntaxException {
+    return ScopeUtils.createScope(input, dependencies);
+  }
+
+  /** Unpacks into the same directory every time, overwriting the last copy. */
+  @Benchmark
+  public List<String> unpackArchives() throws IOException {
+    List<String> classRoots = new ArrayList<>();
+    List<String> jars = new ArrayList<>();
+    JarUtils.unpackArchives(input, workDir, classRoots, jars);
+    jars.addAll(classRoots);
+    return jars;
+  }
+}
@@ -0,0 +1,156 @@
+/*
+Copyright IBM Corporation 2023
+
+Licensed under the Apache Public License 2.0, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ibm.minerva.app2callgraph;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.io.IOUtils;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.ibm.minerva.app2callgraph.utils.Log;
+import com.ibm.minerva.app2callgraph.utils.ResidentPrimordial;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves analyses over HTTP on localhost from a warm JVM. The Java SE standard
+ * libs are loaded once at startup and shared by the class hierarchies of all
+ * jobs, so a job only pays for its own classes and its call graph.
+ *
+ * <pre>
+ * POST /analyze   {"input": "app.ear", "output": "out", "context_mode": "rta",
+ *                  "extra_libs": "libs", "args": ["--format", "binary"]}
+ *                 Runs one job and answers {"status": "done", "millis": ...,
+ *                 "graphs": {"rta": {"nodes": ..., "edges": ...}}} or
+ *                 {"status": "failed", "error": ...} when it is finished.
+ * GET  /status    {"resident_classes": ..., "jobs": ..., "failed_jobs": ...}
+ * POST /shutdown  Stops the server once the running job is finished.
+ * </pre>
+ *
+ * Any other key is taken as the long name of a command line option, and "args"
+ * takes further command line arguments. Jobs run one at a time, in the order
+ * they arrive.
+ */
+public class AnalysisServer {
+
+  private final ResidentPrimordial resident;
+  private final ExecutorService worker = Executors.newSingleThreadExecutor();
+  private final AtomicInteger jobs = new AtomicInteger();
+  private final AtomicInteger failedJobs = new AtomicInteger();
+  private HttpServer server;
+
+  private AnalysisServer(ResidentPrimordial resident) {
+    this.resident = resident;
+  }
+
+  /**
+   * Load the standard libs and start serving. Returns once the server is
+   * listening; the server threads keep the JVM alive until /shutdown.
+   *
+   * @param port The localhost port to listen on.
+   * @throws IOException
+   * @throws ClassHierarchyException
+   */
+  public static void serve(int port) throws IOException, ClassHierarchyException {
+    AnalysisServer analysisServer = new AnalysisServer(ResidentPrimordial.load());
+    HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    server.createContext("/analyze", analysisServer::analyze);
+    server.createContext("/status", analysisServer::status);
+    server.createContext("/shutdown", analysisServer::shutdown);
+    server.setExecutor(Executors.newCachedThreadPool());
+    analysisServer.server = server;
+    server.start();
+    Log.info("Serving analyses on http://" + server.getAddress().getHostString() + ":"
+        + server.getAddress().getPort() + ".");
+  }
+
+  private void analyze(HttpExchange exchange) throws IOException {
+    if (!exchange.getRequestMethod().equals("POST")) {
+      respond(exchange, 405, new JSONObject().put("error", "Use POST"));
+      return;
+    }
+    CallGraphAnalysis.Config config;
+    try (InputStream in = exchange.getRequestBody()) {
+      config = App2CallGraph.parseJob(new JSONObject(IOUtils.toString(in, StandardCharsets.UTF_8)));
+    } catch (JSONException | ParseException | IllegalArgumentException e) {
+      respond(exchange, 400, new JSONObject().put("status", "rejected").put("error", e.getMessage()));
+      return;
+    }
+
+    int job = jobs.incrementAndGet();
+    Future<JSONObject> result = worker.submit(() -> {
+      Log.info("Starting job " + job + ".");
+      long start = System.currentTimeMillis();
+      CallGraphAnalysis.Result analysis = CallGraphAnalysis.run(config, resident);
+      return new JSONObject().put("status", "done").put("job", job)
+          .put("millis", System.currentTimeMillis() - start).put("graphs", analysis.toJson());
+    });
+    try {
+      JSONObject response = result.get();
+      Log.done("Finished job " + job + " in " + response.getLong("millis") + " milliseconds.");
+      respond(exchange, 200, response);
+    } catch (ExecutionException e) {
+      failedJobs.incrementAndGet();
+      Log.error("Job " + job + " failed: " + e.getCause());
+      respond(exchange, 500, new JSONObject().put("status", "failed").put("job", job)
+          .put("error", String.valueOf(e.getCause())));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      respond(exchange, 503, new JSONObject().put("status", "interrupted").put("job", job));
+    }
+  }
+
+  private void status(HttpExchange exchange) throws IOException {
+    respond(exchange, 200, new JSONObject()
+        .put("resident_classes", resident.getNumberOfClasses())
+        .put("jobs", jobs.get())
+        .put("failed_jobs", failedJobs.get()));
+  }
+
+  private void shutdown(HttpExchange exchange) throws IOException {
+    if (!exchange.getRequestMethod().equals("POST")) {
+      respond(exchange, 405, new JSONObject().put("error", "Use POST"));
+      return;
+    }
+    respond(exchange, 200, new JSONObject().put("status", "stopping"));
+    worker.shutdown();
+    new Thread(() -> {
+      server.stop(0);
+      ((ExecutorService) server.getExecutor()).shutdown();
+      Log.info("Analysis server stopped.");
+    }).start();
+  }
+
+  private static void respond(HttpExchange exchange, int code, JSONObject body) throws IOException {
+    byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(code, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+}
@@ -13,63 +13,28 @@ limitations under the License.
 
 package com.ibm.minerva.app2callgraph;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.net.URISyntaxException;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.StringJoiner;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.DefaultParser;
 import org.apache.commons.cli.HelpFormatter;
 import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.json.JSONArray;
+import org.json.JSONObject;
 
-// JGraptT to export call graph
-import org.jgrapht.Graph;
-import org.jgrapht.graph.DefaultDirectedGraph;
-import org.jgrapht.nio.Attribute;
-import org.jgrapht.nio.DefaultAttribute;
-import org.jgrapht.nio.json.JSONExporter;
-
-import com.ibm.minerva.app2callgraph.entities.CallGraphEdge;
-import com.ibm.minerva.app2callgraph.entities.CallGraphNode;
-import com.ibm.minerva.app2callgraph.utils.AnalysisUtils;
+import com.ibm.minerva.app2callgraph.utils.AnalysisEvents;
 import com.ibm.minerva.app2callgraph.utils.Log;
-import com.ibm.minerva.app2callgraph.utils.ScopeUtils;
-import com.ibm.wala.cast.ir.ssa.AstIRFactory;
-import com.ibm.wala.cast.java.client.impl.ZeroCFABuilderFactory;
-import com.ibm.wala.cast.java.client.impl.ZeroOneCFABuilderFactory;
-import com.ibm.wala.cast.java.translator.jdt.ecj.ECJClassLoaderFactory;
-import com.ibm.wala.classLoader.CallSiteReference;
-import com.ibm.wala.classLoader.IClass;
-import com.ibm.wala.classLoader.IMethod;
-import com.ibm.wala.ipa.callgraph.AnalysisCacheImpl;
-import com.ibm.wala.ipa.callgraph.AnalysisOptions;
-import com.ibm.wala.ipa.callgraph.AnalysisOptions.ReflectionOptions;
-import com.ibm.wala.ipa.callgraph.AnalysisScope;
-import com.ibm.wala.ipa.callgraph.CGNode;
 import com.ibm.wala.ipa.callgraph.CallGraph;
-import com.ibm.wala.ipa.callgraph.CallGraphBuilder;
-import com.ibm.wala.ipa.callgraph.CallGraphBuilderCancelException;
-import com.ibm.wala.ipa.callgraph.Entrypoint;
-import com.ibm.wala.ipa.callgraph.IAnalysisCacheView;
 import com.ibm.wala.ipa.cha.ClassHierarchyException;
-import com.ibm.wala.ipa.cha.ClassHierarchyFactory;
-import com.ibm.wala.ipa.cha.IClassHierarchy;
-import com.ibm.wala.ssa.SymbolTable;
-import com.ibm.wala.ipa.callgraph.impl.Util;
 
 public class App2CallGraph {
 
-  private static String input;
-  private static String outDir;
-  private static String extraLibs = null;
-
   /**
    * Convert java binary (*.jar, *.ear, *.war) to a neo4j graph.
    *
@@ -79,18 +44,7 @@ public class App2CallGraph {
    * output jar]`
    */
   public static void main(String... args) {
-    Options options = new Options();
-    options.addOption("i", "input", true,
-        "Path to the input jar(s). For multiple JARs, separate them with ':'. E.g., file1.jar:file2.jar, etc.");
-    options.addOption("e", "extra-libs", true,
-        "Path to the extra libraries to consider when processing jar(s). This arg will the the path the to directory.");
-    options.addOption("o", "output", true, "Destination (directory) to save the output graphs.");
-    options.addOption("q", "quiet", false, "Don't print logs to console.");
-    options.addOption("h", "help", false, "Print this help message.");
-    // Experimental options for the finding the root cause of issue #7
-    options.addOption("m", "context-mode", true, "Select context mode (RTA, Zero, Zero-One.).");
-    options.addOption("x", "experimental", false,
-        "Experimental mode to save the CHA classes for comparison and verification.");
+    Options options = makeOptions();
     CommandLineParser parser = new DefaultParser();
 
     CommandLine cmd = null;
@@ -110,6 +64,17 @@ public class App2CallGraph {
       if (cmd.hasOption("quiet")) {
         Log.setVerbosity(false);
       }
+      if (cmd.hasOption("jfr")) {
+        // Written when the JVM exits, which every mode below ends with.
+        AnalysisEvents.startRecording(cmd.getOptionValue("jfr"));
+      }
+      if (cmd.hasOption("serve")) {
+        AnalysisServer.serve(Integer.parseInt(cmd.getOptionValue("serve")));
+        return;
+      }
+      if (cmd.hasOption("batch")) {
+        System.exit(BatchRunner.run(cmd) == 0 ? 0 : 1);
+      }
       if (!cmd.hasOption("input")) {
         throw new RuntimeException(
             "[Runtime Exception] Need to provide an input JAR to process.\n\n");
@@ -117,8 +82,6 @@ public class App2CallGraph {
       if (!cmd.hasOption("output")) {
         throw new RuntimeException(
             "[Runtime Exception] Need to provide an output directory to save the generated files.\n\n");
-      } else {
-        outDir = String.valueOf(options.getOption("outdir"));
       }
     } catch (Exception e) {
       System.err.println(e.getMessage());
@@ -134,6 +97,90 @@ public class App2CallGraph {
     System.exit(0);
   }
 
+  /**
+   * @return Options : The command line options, shared by the command line and
+   *         the jobs of the analysis server.
+   */
+  static Options makeOptions() {
+    Options options = new Options();
+    options.addOption("i", "input", true,
+        "Path to the input jar(s). For multiple JARs, separate them with ':'. E.g., file1.jar:file2.jar, etc.");
+    options.addOption("e", "extra-libs", true,
+        "Path to the extra libraries to consider when processing jar(s). This arg will the the path the to directory.");
+    options.addOption(null, "prune-libs", false,
+        "Leave out the extra libraries that no class reachable from the application's constant pools "
+            + "belongs to, and save library_pruning.json to the output.");
+    options.addOption("o", "output", true, "Destination (directory) to save the output graphs.");
+    options.addOption("c", "cache-dir", true,
+        "Directory of a persistent cache of unpacked *.ear/*.war archives, reused across runs.");
+    options.addOption(null, "cache-size", true, "Maximum size of the archive cache in MB (default: 2048).");
+    options.addOption("t", "load-threads", true,
+        "Number of threads to read class files with before building the class hierarchy (default: 1, serial).");
+    options.addOption("p", "entrypoints", true,
+        "Select entrypoints (all, framework). 'all' uses every public method of every application class; "
+            + "'framework' uses the Java EE / Jakarta EE entry surfaces (servlets, JAX-RS, EJBs, MDBs, CDI "
+            + "observers, WebSocket endpoints, web.xml mappings). Defaults to all.");
+    options.addOption("s", "shards", true,
+        "Split the entrypoints into this many shards and build their call graphs in parallel, each against a class hierarchy of its own.");
+    options.addOption(null, "shard-by", true, "Partition entrypoints into shards by package or class (default: package).");
+    options.addOption(null, "shard-compare", false,
+        "Also build the monolithic call graph and report how the merged sharded graph differs from it.");
+    options.addOption(null, "entrypoint-costs", true,
+        "Before the call graph, build an isolated call graph for every sampled group of entrypoints, report "
+            + "the nodes, extra contexts and time of each to entrypoint_costs_<mode>.json and log this many of "
+            + "the most expensive groups. Needs --time-budget, which bounds each group.");
+    options.addOption(null, "cost-by", true,
+        "Group entrypoints for --entrypoint-costs by method, class or package (default: class).");
+    options.addOption(null, "cost-sample", true,
+        "Measure only this many entrypoint groups, spread evenly over all of them, or 0 for all (default: "
+            + EntrypointCosts.DEFAULT_SAMPLE + ").");
+    options.addOption(null, "time-budget", true,
+        "Maximum seconds to spend building the call graph. When exceeded, the partial call graph is saved.");
+    options.addOption(null, "heap-budget", true,
+        "Maximum live heap in MB while building the call graph. When exceeded, the partial call graph is saved.");
+    options.addOption("l", "level", true,
+        "Select the level of the saved graph (class, method). 'class' saves call_graph_<mode>.json with class "
+            + "nodes; 'method' saves method_graph_<mode>.json with one node per method, string table encoded. "
+            + "Defaults to class.");
+    options.addOption(null, "projection", true,
+        "Select which call edges are projected onto classes (entrypoints, full). 'entrypoints' keeps the calls "
+            + "made by entrypoint methods; 'full' keeps every call between application classes and weighs edges "
+            + "by the number of calling method pairs. Defaults to entrypoints.");
+    options.addOption(null, "projection-threads", true,
+        "Number of threads of the full projection (default: 1, serial). The result does not depend on it.");
+    options.addOption("f", "format", true,
+        "Select the output format (json, neo4j-csv, binary). 'neo4j-csv' writes nodes.csv and relationships.csv "
+            + "with typed headers into a directory per graph, ready for neo4j-admin database import. 'binary' "
+            + "writes call_graph_<mode>.bin, a memory-mappable class graph (class level only). Defaults to json.");
+    options.addOption("q", "quiet", false, "Don't print logs to console.");
+    options.addOption("h", "help", false, "Print this help message.");
+    // Experimental options for the finding the root cause of issue #7
+    options.addOption("m", "context-mode", true,
+        "Select context mode (RTA, Zero, Zero-One, Auto, All). All builds RTA, Zero and Zero-One in one run, "
+            + "sharing the class hierarchy and IR cache. Auto starts with the most precise mode that is estimated "
+            + "to fit the heap and falls back to a less precise one when --heap-budget (default: 80% of the "
+            + "maximum heap) or --time-budget is exceeded.");
+    options.addOption("x", "experimental", false,
+        "Experimental mode to save the CHA classes for comparison and verification.");
+    options.addOption(null, "serve", true,
+        "Run as an analysis server on this localhost port, keeping the JVM and the Java SE standard library "
+            + "classes loaded between analyses. Jobs are POSTed as JSON to /analyze.");
+    options.addOption(null, "batch", true,
+        "Run the jobs of this manifest, a JSON array of {\"input\", \"output\", \"extra-libs\", "
+            + "\"context-mode\"} objects, in one JVM and save batch_summary.json to --output (default: the "
+            + "manifest's directory). Jobs share --cache-dir (default: <output>/archive-cache) and the heap; "
+            + "they are not isolated and run without heap budgets.");
+    options.addOption(null, "batch-threads", true,
+        "Maximum number of batch jobs that run at once (default: the number of processors).");
+    options.addOption(null, "batch-heap", true,
+        "Heap in MB that concurrent batch jobs may take together, by their estimated or given \"heap-mb\" "
+            + "(default: 80% of the maximum heap).");
+    options.addOption(null, "jfr", true,
+        "Record a Java Flight Recorder profile, including the analysis phases, module loads and solver "
+            + "progress, to this .jfr file.");
+    return options;
+  }
+
   /**
    * @param cmd
    * @throws URISyntaxException
@@ -141,160 +188,54 @@ public class App2CallGraph {
    */
   private static void buildAndSaveCallGraph(CommandLine cmd)
       throws ClassHierarchyException, IllegalArgumentException, NullPointerException, IOException,
-      CallGraphBuilderCancelException, URISyntaxException {
-
-    input = cmd.getOptionValue("input");
-    extraLibs = cmd.getOptionValue("extra-libs");
-    AnalysisScope scope = ScopeUtils.createScope(input, extraLibs);
-
-    // Make class Heirarchy
-    Log.info("Make class hierarchy.");
+      URISyntaxException {
     try {
-      // Create class hierarchy
-      IClassHierarchy cha = ClassHierarchyFactory.make(scope, new ECJClassLoaderFactory(scope.getExclusions()));
-      Log.done("Done class hierarchy: " + cha.getNumberOfClasses() + " classes");
-
-      // Initialize analysis options
-      AnalysisOptions options = new AnalysisOptions();
-      Iterable<Entrypoint> entryPoints = AnalysisUtils.getEntryPoints(cha);
-      options.setEntrypoints(entryPoints);
-      options.getSSAOptions().setDefaultValues(SymbolTable::getDefaultValue);
-      options.setReflectionOptions(ReflectionOptions.NONE);
-      IAnalysisCacheView cache = new AnalysisCacheImpl(AstIRFactory.makeDefaultFactory(),
-          options.getSSAOptions());
-
-      // Build the call graph
-      Log.info("Building call graph.");
-      long start_time = System.currentTimeMillis();
-
-      String ctxMode = cmd.getOptionValue("context-mode");
-      // Select context sensitivity mode
-      CallGraphBuilder<?> builder = null;
-
-      if (ctxMode != null) {
-        if (ctxMode.toLowerCase().equals("zero")) {
-          Log.info("Using ZeroCFA.");
-          builder = new ZeroCFABuilderFactory().make(options, cache, cha);
-        } else if (ctxMode.toLowerCase().equals("zero-one")) {
-          Log.info("Using ZeroOneCFA.");
-          builder = new ZeroOneCFABuilderFactory().make(options, cache, cha);
-        } else if (ctxMode.toLowerCase().equals("rta")) {
-          Log.info("Using RTA.");
-          builder = Util.makeRTABuilder(options, cache, cha);
-        } else {
-          Log.error("Context mode " + ctxMode + " is not recognized. Choose one of RTA, Zero, Zero-One.");
-          throw new IllegalArgumentException();
-        }
-      } else {
-          Log.info("No context mode specified, defaulting to RTA.");
-          ctxMode = "rta";
-          builder = Util.makeRTABuilder(options, cache, cha);
-        }
-
-
-      CallGraph callGraph = builder.makeCallGraph(options, null);
-      long end_time = System.currentTimeMillis();
-      Log.done(
-          "Finished construction of call graph. Took "
-              + Long.toString(end_time - start_time)
-              + " milliseconds.");
-
-      // Save call graph
-      outDir = cmd.getOptionValue("output");
-      saveCallGraph(callGraph, outDir, "call_graph_" + ctxMode + ".json");
-      Log.info("Saving graph to " + (new File(outDir,
-          "call_graph_" + ctxMode + ".json")).getAbsolutePath().toString() + ".");
-
-      // Experiment mode dump...
-      if (cmd.hasOption("experimental")) {
-        try (FileWriter writer = new FileWriter(new File( outDir, "classes_in_class_hierarchy.txt"))) {
-          for (IClass c : cha) {
-            if (AnalysisUtils.isApplicationClass(c))
-              writer.write(c.getName() + "\n");
-          }
-        } catch (FileNotFoundException e) {
-          throw e;
-        } catch (IOException e) {
-          Log.error("Something went wrong");
-        }
-        // System.exit(0);
-      }
-    } catch (ClassHierarchyException | IllegalArgumentException | NullPointerException
-        | CallGraphBuilderCancelException che) {
+      CallGraphAnalysis.run(CallGraphAnalysis.Config.fromCommandLine(cmd));
+    } catch (ClassHierarchyException | IllegalArgumentException | NullPointerException che) {
       che.printStackTrace();
       System.exit(-1);
     }
   }
 
   /**
-   * @param klass
-   * @return CallGraphNode
+   * Turn a job into the analysis it stands for. Every key but "args" is the
+   * long name of an option, with '_' standing for '-'; true stands for a flag
+   * and other values are the option's argument. "args" holds further command
+   * line arguments.
+   *
+   * @param job E.g. {"input": "app.ear", "output": "out", "context-mode": "rta"}
+   * @return CallGraphAnalysis.Config
+   * @throws ParseException
    */
-  private static CallGraphNode buildCallGraphNode(IClass klass) {
-    String className = klass.getName().toString();
-    Boolean isPrivateClass = klass.isPrivate();
-    Integer num_fields = klass.getAllFields().size();
-    Integer num_static_fields = klass.getAllStaticFields().size();
-    Integer num_instance_fields = klass.getAllInstanceFields().size();
-    Integer num_static_methods = 0;
-    for (IMethod method : klass.getDeclaredMethods()) {
-      num_static_methods += method.isStatic() ? 1 : 0;
+  static CallGraphAnalysis.Config parseJob(JSONObject job) throws ParseException {
+    List<String> args = new ArrayList<>();
+    for (String key : new TreeSet<>(job.keySet())) {
+      if (key.equals("args")) {
+        continue;
+      }
+      Object value = job.get(key);
+      if (Boolean.FALSE.equals(value)) {
+        continue;
+      }
+      args.add("--" + key.replace('_', '-'));
+      if (!Boolean.TRUE.equals(value)) {
+        args.add(String.valueOf(value));
+      }
     }
-
-    return new CallGraphNode(className, isPrivateClass, num_fields,
-        num_static_fields, num_instance_fields,
-        num_static_methods, num_static_methods);
-
-  }
-
-  /**
-   * @param callGraph
-   * @return Graph<CallGraphNode, CallGraphEdge>
-   */
-  private static Graph<CallGraphNode, CallGraphEdge> getDefaultDirectedGraph(CallGraph callGraph) {
-    Graph<CallGraphNode, CallGraphEdge> graph = new DefaultDirectedGraph<>(CallGraphEdge.class);
-    for (CGNode entrypointNode : callGraph.getEntrypointNodes()) {
-      IMethod entryMethod = entrypointNode.getMethod();
-      // Get all callsites that may execute in a given method
-      Iterator<CallSiteReference> outGoingCalls = entrypointNode.iterateCallSites();
-      for (Iterator<CallSiteReference> it = outGoingCalls; it.hasNext();) {
-        CallSiteReference callSiteReference = it.next();
-        for (CGNode callTarget : callGraph.getPossibleTargets(entrypointNode,
-            callSiteReference)) {
-          if (AnalysisUtils.isApplicationClass(callTarget.getMethod().getDeclaringClass())) {
-            // Create a node for the source class
-            IClass sourceClass = entryMethod.getDeclaringClass();
-            CallGraphNode source = buildCallGraphNode(sourceClass);
-
-            // Create a node for the target class
-            IClass targetClass = callTarget.getMethod().getDeclaringClass();
-            CallGraphNode target = buildCallGraphNode(targetClass);
-
-            // Ignore self references
-            if (source.equals(target)) {
-              continue;
-            }
-
-            // Add the vertices to the final graph
-            graph.addVertex(source);
-            graph.addVertex(target);
-            // Get the edge between the source and the target
-            CallGraphEdge cgEdge = graph.getEdge(source, target);
-            // If no edge exists, then create one...
-            if (cgEdge == null) {
-              CallGraphEdge edge = new CallGraphEdge(entryMethod.getName(),
-                  callTarget.getMethod().getName(), 1.0);
-              graph.addEdge(source, target, edge);
-            }
-            // If edge exists, then increment the weight
-            else {
-              cgEdge.incrementWeight();
-            }
-          }
-        }
+    JSONArray extra = job.optJSONArray("args");
+    if (extra != null) {
+      for (int i = 0; i < extra.length(); i++) {
+        args.add(extra.getString(i));
       }
     }
-    return graph;
+    CommandLine cmd = new DefaultParser().parse(makeOptions(), args.toArray(new String[0]));
+    if (!cmd.hasOption("input") || !cmd.hasOption("output")) {
+      throw new IllegalArgumentException("A job needs an input and an output.");
+    }
+    if (cmd.hasOption("serve") || cmd.hasOption("batch") || cmd.hasOption("jfr")) {
+      throw new IllegalArgumentException("A job cannot start a server, a batch or a recording.");
+    }
+    return CallGraphAnalysis.Config.fromCommandLine(cmd);
   }
 
   /**
@@ -303,31 +244,6 @@ public class App2CallGraph {
    * @param outFile
    */
   public static void saveCallGraph(CallGraph callGraph, String outPath, String outFile) {
-    Graph<CallGraphNode, CallGraphEdge> graph = getDefaultDirectedGraph(callGraph);
-    JSONExporter<CallGraphNode, CallGraphEdge> exporter = new JSONExporter<>(v -> v.className);
-    exporter.setVertexAttributeProvider((v) -> {
-      Map<String, Attribute> map = new LinkedHashMap<>();
-      map.put("is_class_private",
-          DefaultAttribute.createAttribute(v.getIsPrivate()));
-      map.put("num_total_fields",
-          DefaultAttribute.createAttribute(v.getNum_fields()));
-      map.put("num_static_fields",
-          DefaultAttribute.createAttribute(v.getNum_static_fields()));
-      map.put("num_instance_fields",
-          DefaultAttribute.createAttribute(v.getNum_instance_fields()));
-      map.put("num_total_methods",
-          DefaultAttribute.createAttribute(v.getNum_declared_methods()));
-      map.put("num_static_methods",
-          DefaultAttribute.createAttribute(v.getNum_static_methods()));
-      return map;
-    });
-    exporter.setEdgeAttributeProvider((e) -> {
-      Map<String, Attribute> map = new LinkedHashMap<>();
-      map.put("weight", DefaultAttribute.createAttribute(e.getWeight()));
-      return map;
-    });
-    // Export the graph to JSON
-    exporter.exportGraph(graph, new File(outPath, outFile));
+    CallGraphAnalysis.saveCallGraph(callGraph, outPath, outFile);
   }
-
 }
@@ -0,0 +1,130 @@
+/*
+Copyright IBM Corporation 2023
+
+Licensed under the Apache Public License 2.0, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ibm.minerva.app2callgraph;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.zip.ZipFile;
+
+import com.ibm.minerva.app2callgraph.utils.BudgetMonitor;
+import com.ibm.minerva.app2callgraph.utils.Log;
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.CallGraphBuilder;
+import com.ibm.wala.ipa.callgraph.CallGraphBuilderCancelException;
+import com.ibm.wala.ipa.callgraph.IAnalysisCacheView;
+import com.ibm.wala.ipa.cha.IClassHierarchy;
+import com.ibm.wala.types.ClassLoaderReference;
+
+/**
+ * Builds the most precise call graph that fits the available resources.
+ *
+ * <p>
+ * The first attempt uses the most precise mode whose estimated footprint fits
+ * the heap budget. The estimate counts the classes of the application and of
+ * its extra libraries, not those of the Java SE standard libs, most of which the
+ * analysis never reaches. Whenever the budget monitor cancels an attempt, the next
+ * less precise mode is tried (Zero-One CFA, then Zero CFA, then RTA), reusing
+ * the same class hierarchy and analysis cache. If even RTA is canceled its
+ * partial call graph is returned.
+ */
+public class AutoCallGraph {
+
+  /** Modes, from most to least precise. */
+  static final String[] MODES = { "zero-one", "zero", "rta" };
+
+  // Conservative live heap per application or library class for each mode.
+  // These only pick the first attempt; the monitor corrects an optimistic choice.
+  private static final long[] BYTES_PER_CLASS = { 320 * 1024, 120 * 1024, 20 * 1024 };
+
+  /** The call graph and the mode that produced it. */
+  public static class Result {
+    public final CallGraph callGraph;
+    public final String ctxMode;
+
+    Result(CallGraph callGraph, String ctxMode) {
+      this.callGraph = callGraph;
+      this.ctxMode = ctxMode;
+    }
+  }
+
+  /**
+   * @param cha     The class hierarchy.
+   * @param options Analysis options holding the entrypoints.
+   * @param cache   Analysis cache shared by all attempts.
+   * @param monitor Budget that triggers a fallback when exceeded.
+   * @param heapBudgetBytes The heap budget the monitor enforces.
+   * @param extraLibs Paths of the extra libraries.
+   * @return Result
+   * @throws IOException
+   */
+  public static Result build(IClassHierarchy cha, AnalysisOptions options, IAnalysisCacheView cache,
+      BudgetMonitor monitor, long heapBudgetBytes, List<String> extraLibs) throws IOException {
+    int numClasses = numClasses(cha, extraLibs);
+    int first = firstMode(numClasses, heapBudgetBytes);
+    Log.info("Auto mode: starting with " + MODES[first] + " for " + numClasses
+        + " application and library classes.");
+    for (int i = first;; i++) {
+      monitor.restart();
+      try {
+        CallGraphBuilder<?> builder = CallGraphAnalysis.makeBuilder(MODES[i], options, cache, cha);
+        monitor.track(builder, MODES[i]);
+        CallGraph callGraph = builder.makeCallGraph(options, monitor);
+        Log.done("Auto mode: " + MODES[i] + " finished in " + monitor.getElapsedMillis() + " milliseconds.");
+        return new Result(callGraph, MODES[i]);
+      } catch (CallGraphBuilderCancelException e) {
+        if (i == MODES.length - 1) {
+          Log.warn("Auto mode: " + MODES[i] + " was canceled too, saving its partial call graph.");
+          return new Result(e.getPartialCallGraph(), MODES[i]);
+        }
+        Log.warn("Auto mode: " + MODES[i] + " was canceled after " + monitor.getElapsedMillis()
+            + " milliseconds, falling back to " + MODES[i + 1] + ".");
+      }
+    }
+  }
+
+  /**
+   * @return int : The number of classes of the application loader plus the
+   *         number of class files in the extra libraries. The extra libraries
+   *         are loaded along with the standard libs (or by the extension loader
+   *         over resident standard libs), so their class files are counted in
+   *         the jars.
+   */
+  static int numClasses(IClassHierarchy cha, List<String> extraLibs) throws IOException {
+    int numClasses = 0;
+    for (IClass c : cha) {
+      if (c.getClassLoader().getReference().equals(ClassLoaderReference.Application)) {
+        numClasses++;
+      }
+    }
+    for (String lib : extraLibs) {
+      if (lib.endsWith(".jar")) {
+        try (ZipFile zipFile = new ZipFile(lib)) {
+          numClasses += (int) zipFile.stream().filter(entry -> entry.getName().endsWith(".class")).count();
+        }
+      }
+    }
+    return numClasses;
+  }
+
+  private static int firstMode(int numClasses, long heapBudgetBytes) {
+    for (int i = 0; i < MODES.length - 1; i++) {
+      if (heapBudgetBytes <= 0 || (long) numClasses * BYTES_PER_CLASS[i] <= heapBudgetBytes) {
+        return i;
+      }
+    }
+    return MODES.length - 1;
+  }
+}
@@ -0,0 +1,211 @@
+/*
+Copyright IBM Corporation 2023
+
+Licensed under the Apache Public License 2.0, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ibm.minerva.app2callgraph;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.io.FileUtils;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.ibm.minerva.app2callgraph.utils.Log;
+
+/**
+ * Runs the jobs of a manifest in one JVM on a bounded pool of workers.
+ *
+ * <p>
+ * The manifest is a JSON array of jobs in the format of the analysis server,
+ * e.g. {"input": "app.ear", "output": "out/app", "extra-libs": "libs",
+ * "context-mode": "rta"}. A job may also give "heap-mb", the heap it is
+ * expected to need; otherwise it is estimated from the size of its input and
+ * libraries and its context mode. A job only starts when a worker is free and
+ * its heap fits in what the running jobs left of the batch heap, so large jobs
+ * run alongside fewer others. All jobs share one archive cache, so archives
+ * that several jobs use are unpacked once; a job leases the cache entries it
+ * reads, so another job's eviction cannot delete them under it.
+ *
+ * <p>
+ * Jobs are not isolated from each other. They share one heap, so the heap-mb
+ * admission is only an estimate: a job that runs out of memory may take down
+ * its neighbours, and the error may surface in any of the running jobs. Live
+ * heap is measured for the whole JVM, so heap budgets cannot tell the jobs
+ * apart and are disabled; auto mode only falls back on its time budget. Each
+ * job loads its own standard libraries rather than sharing a resident loader,
+ * whose class hierarchies must be used one at a time. Run jobs that need
+ * isolation in JVMs of their own. A job that fails is recorded as such and does
+ * not stop the others. batch_summary.json lists the status, time and graph
+ * sizes of every job.
+ */
+public class BatchRunner {
+
+  private static final String SUMMARY = "batch_summary.json";
+
+  // Heap of a job beyond its input, and the heap per byte of input and
+  // libraries for each context mode. Like the estimates of auto mode, these are
+  // deliberately conservative.
+  private static final long BASE_HEAP_MB = 256;
+  private static final int RTA_HEAP_PER_BYTE = 4;
+  private static final int ZERO_HEAP_PER_BYTE = 8;
+  private static final int ZERO_ONE_HEAP_PER_BYTE = 16;
+
+  /**
+   * @param cmd The command line holding --batch and the batch options.
+   * @return int : The number of jobs that did not finish.
+   * @throws IOException
+   */
+  public static int run(CommandLine cmd) throws IOException {
+    File manifest = new File(cmd.getOptionValue("batch"));
+    JSONArray jobs = new JSONArray(new String(Files.readAllBytes(manifest.toPath()), StandardCharsets.UTF_8));
+    File summaryDir = new File(cmd.getOptionValue("output", manifest.getAbsoluteFile().getParent()));
+    Files.createDirectories(summaryDir.toPath());
+    String cacheDir = cmd.getOptionValue("cache-dir", new File(summaryDir, "archive-cache").getPath());
+    int threads = Integer.parseInt(cmd.getOptionValue("batch-threads",
+        Integer.toString(Runtime.getRuntime().availableProcessors())));
+    int heapMb = Integer.parseInt(cmd.getOptionValue("batch-heap",
+        Long.toString(Runtime.getRuntime().maxMemory() / 10 * 8 / (1024 * 1024))));
+    Log.info("Running " + jobs.length() + " jobs on " + threads + " workers within " + heapMb + " MB of heap.");
+
+    Semaphore workers = new Semaphore(threads);
+    Semaphore heap = new Semaphore(heapMb, true);
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    JSONObject[] results = new JSONObject[jobs.length()];
+    long start = System.currentTimeMillis();
+    try {
+      for (int i = 0; i < jobs.length(); i++) {
+        final int index = i;
+        JSONObject job = new JSONObject();
+        for (String key : jobs.getJSONObject(i).keySet()) {
+          job.put(key.replace('_', '-'), jobs.getJSONObject(i).get(key));
+        }
+        results[i] = new JSONObject().put("job", i).put("input", job.optString("input", null))
+            .put("output", job.optString("output", null));
+        CallGraphAnalysis.Config config;
+        int jobHeapMb;
+        try {
+          long estimate = job.has("heap-mb") ? job.getLong("heap-mb") : estimateHeapMb(job);
+          jobHeapMb = (int) Math.max(1, Math.min(heapMb, estimate));
+          job.remove("heap-mb");
+          if (job.has("heap-budget")) {
+            throw new IllegalArgumentException("Heap budgets are not supported in batch jobs.");
+          }
+          // The JVM-wide heap signal would cancel neighbouring jobs.
+          job.put("heap-budget", -1);
+          if (!job.has("cache-dir")) {
+            job.put("cache-dir", cacheDir);
+          }
+          config = App2CallGraph.parseJob(job);
+        } catch (Exception e) {
+          Log.error("Job " + i + " is rejected: " + e.getMessage());
+          results[i].put("status", "rejected").put("error", String.valueOf(e.getMessage()));
+          continue;
+        }
+        results[i].put("heap_mb", jobHeapMb);
+
+        workers.acquire();
+        heap.acquire(jobHeapMb);
+        executor.submit(() -> {
+          try {
+            runJob(index, config, results[index]);
+          } finally {
+            heap.release(jobHeapMb);
+            workers.release();
+          }
+        });
+      }
+      executor.shutdown();
+      executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      executor.shutdownNow();
+      throw new IOException("Interrupted while running the batch", e);
+    }
+
+    int failed = 0;
+    JSONArray summary = new JSONArray();
+    for (JSONObject result : results) {
+      if (!result.optString("status", "").equals("done")) {
+        failed++;
+      }
+      summary.put(result);
+    }
+    long millis = System.currentTimeMillis() - start;
+    File summaryFile = new File(summaryDir, SUMMARY);
+    try (FileWriter writer = new FileWriter(summaryFile)) {
+      writer.write(new JSONObject()
+          .put("jobs", summary)
+          .put("failed_jobs", failed)
+          .put("millis", millis).toString(2));
+    }
+    Log.done("Finished " + (results.length - failed) + " of " + results.length + " jobs in " + millis
+        + " milliseconds. Saving summary to " + summaryFile.getAbsolutePath() + ".");
+    return failed;
+  }
+
+  private static void runJob(int index, CallGraphAnalysis.Config config, JSONObject result) {
+    Log.info("Starting job " + index + ": " + config.getInput() + ".");
+    long start = System.currentTimeMillis();
+    try {
+      result.put("graphs", CallGraphAnalysis.run(config).toJson());
+      result.put("status", "done");
+      Log.done("Finished job " + index + " in " + (System.currentTimeMillis() - start) + " milliseconds.");
+    } catch (OutOfMemoryError e) {
+      result.put("status", "oom").put("error", String.valueOf(e.getMessage()));
+      Log.error("Job " + index + " ran out of memory.");
+    } catch (Throwable e) {
+      result.put("status", "failed").put("error", String.valueOf(e));
+      Log.error("Job " + index + " failed: " + e);
+    } finally {
+      result.put("millis", System.currentTimeMillis() - start);
+    }
+  }
+
+  /** Estimate the heap of a job from the size of its input and libraries. */
+  private static long estimateHeapMb(JSONObject job) {
+    long bytes = 0;
+    for (String input : job.getString("input").split(":")) {
+      bytes += sizeOf(new File(input));
+    }
+    if (job.has("extra-libs")) {
+      bytes += sizeOf(new File(job.getString("extra-libs")));
+    }
+    String ctxMode = job.optString("context-mode", "rta").toLowerCase();
+    long perByte;
+    switch (ctxMode) {
+    case "zero":
+      perByte = ZERO_HEAP_PER_BYTE;
+      break;
+    case "zero-one":
+    case "auto":
+    case "all":
+      perByte = ZERO_ONE_HEAP_PER_BYTE;
+      break;
+    default:
+      perByte = RTA_HEAP_PER_BYTE;
+    }
+    return BASE_HEAP_MB + bytes * perByte / (1024 * 1024);
+  }
+
+  private static long sizeOf(File file) {
+    return file.exists() ? FileUtils.sizeOf(file) : 0;
+  }
+}
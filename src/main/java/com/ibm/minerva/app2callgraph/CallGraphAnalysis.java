@@ -0,0 +1,1087 @@
+/*
+Copyright IBM Corporation 2023
+
+Licensed under the Apache Public License 2.0, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ibm.minerva.app2callgraph;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.cli.CommandLine;
+import org.jgrapht.Graph;
+import org.jgrapht.nio.Attribute;
+import org.jgrapht.nio.DefaultAttribute;
+import org.jgrapht.nio.json.JSONExporter;
+import org.json.JSONObject;
+
+import com.ibm.minerva.app2callgraph.entities.CallGraphEdge;
+import com.ibm.minerva.app2callgraph.entities.CallGraphNode;
+import com.ibm.minerva.app2callgraph.entities.ClassGraph;
+import com.ibm.minerva.app2callgraph.utils.AnalysisUtils;
+import com.ibm.minerva.app2callgraph.utils.ArchiveCache;
+import com.ibm.minerva.app2callgraph.utils.BinaryGraphReader;
+import com.ibm.minerva.app2callgraph.utils.BinaryGraphWriter;
+import com.ibm.minerva.app2callgraph.utils.BudgetMonitor;
+import com.ibm.minerva.app2callgraph.utils.EventLoaderFactory;
+import com.ibm.minerva.app2callgraph.utils.ClassMetricsTable;
+import com.ibm.minerva.app2callgraph.utils.FrameworkEntrypoints;
+import com.ibm.minerva.app2callgraph.utils.GraphJsonWriter;
+import com.ibm.minerva.app2callgraph.utils.JarUtils;
+import com.ibm.minerva.app2callgraph.utils.LibraryPruner;
+import com.ibm.minerva.app2callgraph.utils.Log;
+import com.ibm.minerva.app2callgraph.utils.MethodGraphWriter;
+import com.ibm.minerva.app2callgraph.utils.Neo4jCsvWriter;
+import com.ibm.minerva.app2callgraph.utils.PhaseMetrics;
+import com.ibm.minerva.app2callgraph.utils.ResidentPrimordial;
+import com.ibm.minerva.app2callgraph.utils.ScopeUtils;
+import com.ibm.wala.cast.ir.ssa.AstIRFactory;
+import com.ibm.wala.cast.java.client.impl.ZeroCFABuilderFactory;
+import com.ibm.wala.cast.java.client.impl.ZeroOneCFABuilderFactory;
+import com.ibm.wala.classLoader.CallSiteReference;
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.ipa.callgraph.AnalysisCacheImpl;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions.ReflectionOptions;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.CallGraphBuilder;
+import com.ibm.wala.ipa.callgraph.CallGraphBuilderCancelException;
+import com.ibm.wala.ipa.callgraph.Entrypoint;
+import com.ibm.wala.ipa.callgraph.IAnalysisCacheView;
+import com.ibm.wala.ipa.callgraph.impl.Util;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.ipa.cha.ClassHierarchyFactory;
+import com.ibm.wala.ipa.cha.IClassHierarchy;
+import com.ibm.wala.ssa.SymbolTable;
+import com.ibm.wala.types.ClassLoaderReference;
+
+/**
+ * Programmatic entry to the analysis. A {@link Config} describes one analysis
+ * and {@link #run(Config)} carries it out, saves its graphs and returns a
+ * {@link Result}. The analysis keeps all of its state in the call, so any
+ * number of analyses may run at once on different threads.
+ *
+ * <pre>
+ * CallGraphAnalysis.Result result = CallGraphAnalysis.run(
+ *     CallGraphAnalysis.Config.builder("app.ear", "out").contextMode("zero").build());
+ * ClassGraph graph = result.getGraph("zero").getClassGraph();
+ * </pre>
+ */
+public final class CallGraphAnalysis {
+
+  private CallGraphAnalysis() {
+  }
+
+  /** Immutable settings of one analysis. See the command line options. */
+  public static final class Config {
+    private final String input;
+    private final String output;
+    private final String extraLibs;
+    private final boolean pruneLibs;
+    private final String cacheDir;
+    private final long cacheSizeMb;
+    private final int loadThreads;
+    private final String entrypoints;
+    private final String contextMode;
+    private final int shards;
+    private final String shardBy;
+    private final boolean shardCompare;
+    private final int entrypointCosts;
+    private final String costBy;
+    private final int costSample;
+    private final long timeBudgetSeconds;
+    private final long heapBudgetMb;
+    private final String level;
+    private final String projection;
+    private final int projectionThreads;
+    private final String format;
+    private final boolean experimental;
+
+    private Config(Builder builder) {
+      this.input = builder.input;
+      this.output = builder.output;
+      this.extraLibs = builder.extraLibs;
+      this.pruneLibs = builder.pruneLibs;
+      this.cacheDir = builder.cacheDir;
+      this.cacheSizeMb = builder.cacheSizeMb;
+      this.loadThreads = builder.loadThreads;
+      this.entrypoints = builder.entrypoints;
+      this.contextMode = builder.contextMode;
+      this.shards = builder.shards;
+      this.shardBy = builder.shardBy;
+      this.shardCompare = builder.shardCompare;
+      this.entrypointCosts = builder.entrypointCosts;
+      this.costBy = builder.costBy;
+      this.costSample = builder.costSample;
+      this.timeBudgetSeconds = builder.timeBudgetSeconds;
+      this.heapBudgetMb = builder.heapBudgetMb;
+      this.level = builder.level;
+      this.projection = builder.projection;
+      this.projectionThreads = builder.projectionThreads;
+      this.format = builder.format;
+      this.experimental = builder.experimental;
+    }
+
+    /**
+     * @param input  Path to the input jar(s), *.ear or *.war, separated by ':'.
+     * @param output Directory to save the graphs to.
+     * @return Builder
+     */
+    public static Builder builder(String input, String output) {
+      return new Builder(input, output);
+    }
+
+    /**
+     * @param cmd A command line parsed with the options of
+     *            {@link App2CallGraph}.
+     * @return Config
+     */
+    static Config fromCommandLine(CommandLine cmd) {
+      Builder builder = builder(cmd.getOptionValue("input"), cmd.getOptionValue("output"))
+          .extraLibs(cmd.getOptionValue("extra-libs"))
+          .pruneLibs(cmd.hasOption("prune-libs"))
+          .cacheDir(cmd.getOptionValue("cache-dir"))
+          .cacheSizeMb(Long.parseLong(cmd.getOptionValue("cache-size", "2048")))
+          .loadThreads(Integer.parseInt(cmd.getOptionValue("load-threads", "1")))
+          .entrypoints(cmd.getOptionValue("entrypoints", "all"))
+          .shards(Integer.parseInt(cmd.getOptionValue("shards", "0")))
+          .shardBy(cmd.getOptionValue("shard-by", "package"))
+          .shardCompare(cmd.hasOption("shard-compare"))
+          .entrypointCosts(Integer.parseInt(cmd.getOptionValue("entrypoint-costs", "0")))
+          .costBy(cmd.getOptionValue("cost-by", "class"))
+          .costSample(Integer.parseInt(cmd.getOptionValue("cost-sample",
+              Integer.toString(EntrypointCosts.DEFAULT_SAMPLE))))
+          .timeBudgetSeconds(Long.parseLong(cmd.getOptionValue("time-budget", "0")))
+          .heapBudgetMb(Long.parseLong(cmd.getOptionValue("heap-budget", "0")))
+          .level(cmd.getOptionValue("level", "class"))
+          .projection(cmd.getOptionValue("projection", "entrypoints"))
+          .projectionThreads(Integer.parseInt(cmd.getOptionValue("projection-threads", "1")))
+          .format(cmd.getOptionValue("format", "json"))
+          .experimental(cmd.hasOption("experimental"));
+      if (cmd.hasOption("context-mode")) {
+        builder.contextMode(cmd.getOptionValue("context-mode"));
+      } else {
+        Log.info("No context mode specified, defaulting to RTA.");
+      }
+      return builder.build();
+    }
+
+    public String getInput() {
+      return input;
+    }
+
+    public String getOutput() {
+      return output;
+    }
+
+    public String getExtraLibs() {
+      return extraLibs;
+    }
+
+    public boolean getPruneLibs() {
+      return pruneLibs;
+    }
+
+    public String getCacheDir() {
+      return cacheDir;
+    }
+
+    public long getCacheSizeMb() {
+      return cacheSizeMb;
+    }
+
+    public int getLoadThreads() {
+      return loadThreads;
+    }
+
+    public String getEntrypoints() {
+      return entrypoints;
+    }
+
+    public String getContextMode() {
+      return contextMode;
+    }
+
+    public int getShards() {
+      return shards;
+    }
+
+    public String getShardBy() {
+      return shardBy;
+    }
+
+    public boolean getShardCompare() {
+      return shardCompare;
+    }
+
+    public int getEntrypointCosts() {
+      return entrypointCosts;
+    }
+
+    public String getCostBy() {
+      return costBy;
+    }
+
+    public int getCostSample() {
+      return costSample;
+    }
+
+    public long getTimeBudgetSeconds() {
+      return timeBudgetSeconds;
+    }
+
+    public long getHeapBudgetMb() {
+      return heapBudgetMb;
+    }
+
+    public String getLevel() {
+      return level;
+    }
+
+    public String getProjection() {
+      return projection;
+    }
+
+    public int getProjectionThreads() {
+      return projectionThreads;
+    }
+
+    public String getFormat() {
+      return format;
+    }
+
+    public boolean getExperimental() {
+      return experimental;
+    }
+  }
+
+  /** Builds a {@link Config}. Anything not set takes the command line default. */
+  public static final class Builder {
+    private final String input;
+    private final String output;
+    private String extraLibs;
+    private boolean pruneLibs;
+    private String cacheDir;
+    private long cacheSizeMb = 2048;
+    private int loadThreads = 1;
+    private String entrypoints = "all";
+    private String contextMode = "rta";
+    private int shards;
+    private String shardBy = "package";
+    private boolean shardCompare;
+    private int entrypointCosts;
+    private String costBy = "class";
+    private int costSample = EntrypointCosts.DEFAULT_SAMPLE;
+    private long timeBudgetSeconds;
+    private long heapBudgetMb;
+    private String level = "class";
+    private String projection = "entrypoints";
+    private int projectionThreads = 1;
+    private String format = "json";
+    private boolean experimental;
+
+    private Builder(String input, String output) {
+      this.input = input;
+      this.output = output;
+    }
+
+    /** Directory of extra libraries, or null for none. */
+    public Builder extraLibs(String extraLibs) {
+      this.extraLibs = extraLibs;
+      return this;
+    }
+
+    /** Leave out the extra libraries the application cannot reach. */
+    public Builder pruneLibs(boolean pruneLibs) {
+      this.pruneLibs = pruneLibs;
+      return this;
+    }
+
+    /** Directory of the archive cache, or null for none. */
+    public Builder cacheDir(String cacheDir) {
+      this.cacheDir = cacheDir;
+      return this;
+    }
+
+    public Builder cacheSizeMb(long cacheSizeMb) {
+      this.cacheSizeMb = cacheSizeMb;
+      return this;
+    }
+
+    public Builder loadThreads(int loadThreads) {
+      this.loadThreads = loadThreads;
+      return this;
+    }
+
+    /** all or framework. */
+    public Builder entrypoints(String entrypoints) {
+      this.entrypoints = entrypoints.toLowerCase();
+      return this;
+    }
+
+    /** rta, zero, zero-one, auto or all. */
+    public Builder contextMode(String contextMode) {
+      this.contextMode = contextMode.toLowerCase();
+      return this;
+    }
+
+    /** Number of shards, or 0 to build the call graph in one piece. */
+    public Builder shards(int shards) {
+      this.shards = shards;
+      return this;
+    }
+
+    /** package or class. */
+    public Builder shardBy(String shardBy) {
+      this.shardBy = shardBy.toLowerCase();
+      return this;
+    }
+
+    public Builder shardCompare(boolean shardCompare) {
+      this.shardCompare = shardCompare;
+      return this;
+    }
+
+    /**
+     * Number of most expensive entrypoint groups to report, or 0 to not measure
+     * them.
+     */
+    public Builder entrypointCosts(int entrypointCosts) {
+      this.entrypointCosts = entrypointCosts;
+      return this;
+    }
+
+    /** method, class or package. */
+    public Builder costBy(String costBy) {
+      this.costBy = costBy.toLowerCase();
+      return this;
+    }
+
+    /**
+     * Number of entrypoint groups to measure, or 0 for all. Defaults to
+     * {@value EntrypointCosts#DEFAULT_SAMPLE}.
+     */
+    public Builder costSample(int costSample) {
+      this.costSample = costSample;
+      return this;
+    }
+
+    /** Time budget in seconds, or 0 for none. */
+    public Builder timeBudgetSeconds(long timeBudgetSeconds) {
+      this.timeBudgetSeconds = timeBudgetSeconds;
+      return this;
+    }
+
+    /**
+     * Live heap budget in MB, or 0 for none. In auto mode 0 stands for 80% of
+     * the maximum heap, and a negative budget for none.
+     */
+    public Builder heapBudgetMb(long heapBudgetMb) {
+      this.heapBudgetMb = heapBudgetMb;
+      return this;
+    }
+
+    /** class or method. */
+    public Builder level(String level) {
+      this.level = level.toLowerCase();
+      return this;
+    }
+
+    /** entrypoints or full. */
+    public Builder projection(String projection) {
+      this.projection = projection.toLowerCase();
+      return this;
+    }
+
+    public Builder projectionThreads(int projectionThreads) {
+      this.projectionThreads = projectionThreads;
+      return this;
+    }
+
+    /** json, neo4j-csv or binary. */
+    public Builder format(String format) {
+      this.format = format.toLowerCase();
+      return this;
+    }
+
+    public Builder experimental(boolean experimental) {
+      this.experimental = experimental;
+      return this;
+    }
+
+    /**
+     * @return Config
+     * @throws IllegalArgumentException If a setting is not recognized or
+     *                                  settings cannot be combined.
+     */
+    public Config build() {
+      if (input == null || output == null) {
+        fail("An analysis needs an input and an output.");
+      }
+      check("Entrypoint mode", entrypoints, "all", "framework");
+      check("Context mode", contextMode, "rta", "zero", "zero-one", "auto", "all");
+      check("Shard strategy", shardBy, "package", "class");
+      check("Cost grouping", costBy, "method", "class", "package");
+      check("Level", level, "class", "method");
+      check("Projection", projection, "entrypoints", "full");
+      check("Format", format, "json", "neo4j-csv", "binary");
+      if (shards > 0 && contextMode.equals("auto")) {
+        fail("Context mode auto cannot be combined with --shards.");
+      }
+      if (entrypointCosts > 0 && contextMode.equals("auto")) {
+        fail("Context mode auto cannot be combined with --entrypoint-costs.");
+      }
+      if (entrypointCosts > 0 && timeBudgetSeconds <= 0) {
+        fail("--entrypoint-costs needs a --time-budget, which bounds the call graph of each group.");
+      }
+      if (format.equals("binary") && level.equals("method")) {
+        fail("Format binary is only available at level class.");
+      }
+      if (shards > 0 && level.equals("method")) {
+        fail("Level method cannot be combined with --shards.");
+      }
+      return new Config(this);
+    }
+
+    private static void check(String setting, String value, String... choices) {
+      if (!Arrays.asList(choices).contains(value)) {
+        fail(setting + " " + value + " is not recognized. Choose one of " + String.join(", ", choices) + ".");
+      }
+    }
+
+    private static void fail(String message) {
+      Log.error(message);
+      throw new IllegalArgumentException(message);
+    }
+  }
+
+  /** A graph saved by an analysis. */
+  public static final class SavedGraph {
+    private final String contextMode;
+    private final int numNodes;
+    private final int numEdges;
+    private final String incompleteReason;
+    private final ClassGraph classGraph;
+
+    SavedGraph(String contextMode, int numNodes, int numEdges, String incompleteReason, ClassGraph classGraph) {
+      this.contextMode = contextMode;
+      this.numNodes = numNodes;
+      this.numEdges = numEdges;
+      this.incompleteReason = incompleteReason;
+      this.classGraph = classGraph;
+    }
+
+    /** @return String : The context mode that built the graph. */
+    public String getContextMode() {
+      return contextMode;
+    }
+
+    public int getNumNodes() {
+      return numNodes;
+    }
+
+    public int getNumEdges() {
+      return numEdges;
+    }
+
+    public boolean isComplete() {
+      return incompleteReason == null;
+    }
+
+    /** @return String : Why the graph is incomplete, or null if it is complete. */
+    public String getIncompleteReason() {
+      return incompleteReason;
+    }
+
+    /**
+     * @return ClassGraph : The class graph, or null at level method. It is the
+     *         graph that was saved; callers must not modify it.
+     */
+    public ClassGraph getClassGraph() {
+      return classGraph;
+    }
+  }
+
+  /** The graphs of an analysis, by context mode. */
+  public static final class Result {
+    private final Map<String, SavedGraph> graphs;
+
+    Result(Map<String, SavedGraph> graphs) {
+      this.graphs = Collections.unmodifiableMap(new LinkedHashMap<>(graphs));
+    }
+
+    public Map<String, SavedGraph> getGraphs() {
+      return graphs;
+    }
+
+    /** @return SavedGraph : The graph of a context mode, or null. */
+    public SavedGraph getGraph(String contextMode) {
+      return graphs.get(contextMode);
+    }
+
+    /** @return JSONObject : The size and completeness of each graph. */
+    public JSONObject toJson() {
+      JSONObject json = new JSONObject();
+      for (SavedGraph graph : graphs.values()) {
+        json.put(graph.getContextMode(), new JSONObject()
+            .put("nodes", graph.getNumNodes())
+            .put("edges", graph.getNumEdges())
+            .put("complete", graph.isComplete()));
+      }
+      return json;
+    }
+  }
+
+  /**
+   * Run an analysis and save its graphs.
+   *
+   * @param config
+   * @return Result
+   * @throws ClassHierarchyException
+   * @throws IOException
+   * @throws URISyntaxException
+   */
+  public static Result run(Config config) throws ClassHierarchyException, IOException, URISyntaxException {
+    return run(config, null);
+  }
+
+  /**
+   * @param config
+   * @param resident The resident standard libs to analyze against, or null to
+   *                 load them.
+   * @return Result
+   * @throws ClassHierarchyException
+   * @throws IOException
+   * @throws URISyntaxException
+   */
+  static Result run(Config config, ResidentPrimordial resident)
+      throws ClassHierarchyException, IOException, URISyntaxException {
+    PhaseMetrics metrics = new PhaseMetrics();
+    // Class files are read from the cached archives until the analysis ends,
+    // so the cache keeps its entries leased until then.
+    ArchiveCache archiveCache = null;
+    if (config.getCacheDir() != null) {
+      archiveCache = new ArchiveCache(Paths.get(config.getCacheDir()), config.getCacheSizeMb() * 1024 * 1024);
+    }
+    try {
+      return run(config, resident, metrics, archiveCache);
+    } finally {
+      // Saved when the analysis fails too, with the phases that ran.
+      try {
+        metrics.write(new File(config.getOutput(), "metrics.json"));
+      } catch (IOException e) {
+        Log.warn("Could not save metrics: " + e.getMessage());
+      } finally {
+        metrics.close();
+        if (archiveCache != null) {
+          archiveCache.close();
+        }
+      }
+    }
+  }
+
+  private static Result run(Config config, ResidentPrimordial resident, PhaseMetrics metrics,
+      ArchiveCache archiveCache) throws ClassHierarchyException, IOException, URISyntaxException {
+    List<String> extraLibs = ScopeUtils.getExtraLibs(config.getExtraLibs());
+    if (config.getPruneLibs() && !extraLibs.isEmpty()) {
+      try (PhaseMetrics.Phase phase = metrics.start("prune_libs")) {
+        LibraryPruner.Result pruned = LibraryPruner.prune(config.getInput(), extraLibs);
+        pruned.write(new File(config.getOutput(), "library_pruning.json"));
+        phase.count("libs", extraLibs.size()).count("kept_libs", pruned.getKeptLibs().size());
+        extraLibs = pruned.getKeptLibs();
+      }
+    }
+    AnalysisScope scope;
+    try (PhaseMetrics.Phase phase = metrics.start("scope")) {
+      scope = resident == null
+          ? ScopeUtils.createScope(config.getInput(), extraLibs, archiveCache)
+          : ScopeUtils.createApplicationScope(config.getInput(), extraLibs, archiveCache);
+      phase.count("modules", numModules(scope));
+    }
+    if (config.getLoadThreads() > 1) {
+      try (PhaseMetrics.Phase phase = metrics.start("prefetch")) {
+        phase.threads(config.getLoadThreads());
+        scope = ScopeUtils.prefetchScope(scope, config.getLoadThreads());
+      }
+    }
+
+    // Make class Heirarchy
+    Log.info("Make class hierarchy.");
+    long chaStart = System.currentTimeMillis();
+    IClassHierarchy cha;
+    try (PhaseMetrics.Phase phase = metrics.start("class_hierarchy")) {
+      // Prefetched modules are read ahead on worker threads while it loads.
+      phase.threads(config.getLoadThreads() > 1 ? config.getLoadThreads() : 1);
+      cha = ClassHierarchyFactory.make(scope, resident == null
+          ? new EventLoaderFactory(scope.getExclusions())
+          : resident.makeLoaderFactory(scope.getExclusions()));
+      phase.count("classes", cha.getNumberOfClasses());
+    }
+    Log.done("Done class hierarchy: " + cha.getNumberOfClasses() + " classes in "
+        + (System.currentTimeMillis() - chaStart) + " milliseconds.");
+
+    // Initialize analysis options
+    Iterable<Entrypoint> entryPoints;
+    try (PhaseMetrics.Phase phase = metrics.start("entrypoints")) {
+      entryPoints = getEntryPoints(config, cha);
+      int numEntryPoints = 0;
+      for (Iterator<Entrypoint> it = entryPoints.iterator(); it.hasNext(); it.next()) {
+        numEntryPoints++;
+      }
+      phase.count("entrypoints", numEntryPoints);
+    }
+    String ctxMode = config.getContextMode();
+    String outDir = config.getOutput();
+    String level = config.getLevel();
+    String projection = config.getProjection();
+    String format = config.getFormat();
+    // In auto mode the heap budget triggers a fallback rather than a partial
+    // result, so it defaults to most of the maximum heap.
+    long heapBudget = config.getHeapBudgetMb() == 0 && ctxMode.equals("auto")
+        ? Runtime.getRuntime().maxMemory() / 10 * 8 / (1024 * 1024)
+        : Math.max(0, config.getHeapBudgetMb());
+    BudgetMonitor monitor = makeBudgetMonitor(config.getTimeBudgetSeconds(), heapBudget);
+
+    // Mode "all" builds every mode in turn against the same class hierarchy
+    // and, outside of sharded runs, the same IR cache.
+    List<String> ctxModes = ctxMode.equals("all") ? Arrays.asList("rta", "zero", "zero-one")
+        : Collections.singletonList(ctxMode);
+    IAnalysisCacheView cache = new AnalysisCacheImpl(AstIRFactory.makeDefaultFactory(),
+        makeAnalysisOptions(entryPoints).getSSAOptions());
+    ClassMetricsTable classMetrics = new ClassMetricsTable();
+    Map<String, SavedGraph> graphs = new LinkedHashMap<>();
+    ShardedCallGraph.ClassHierarchySource shardCha = null;
+    if (config.getShards() > 0) {
+      // The resident standard libs cannot be shared by shards running at the
+      // same time, so their class hierarchies get a scope of their own.
+      AnalysisScope shardScope = resident == null ? scope
+          : ScopeUtils.createScope(config.getInput(), extraLibs, archiveCache);
+      shardCha = () -> ClassHierarchyFactory.make(shardScope, new EventLoaderFactory(shardScope.getExclusions()));
+    }
+
+    for (String mode : ctxModes) {
+      if (config.getEntrypointCosts() > 0) {
+        try (PhaseMetrics.Phase phase = metrics.start("entrypoint_costs").put("context_mode", mode)) {
+          phase.count("groups", EntrypointCosts.measure(cha, entryPoints, mode, config.getCostBy(),
+              config.getCostSample(), config.getEntrypointCosts(), outDir, monitor));
+        }
+      }
+      if (config.getShards() > 0) {
+        ClassGraph graph;
+        try (PhaseMetrics.Phase phase = metrics.start("call_graph").put("context_mode", mode)) {
+          // Each shard projects its own call graph, so this includes projection.
+          graph = ShardedCallGraph.build(cha, shardCha, entryPoints, mode, config.getShards(),
+              config.getShardBy(), config.getShardCompare(), outDir, monitor, classMetrics, projection);
+          phase.count("shards", config.getShards()).count("class_nodes", graph.getNumNodes())
+              .count("class_edges", graph.getNumEdges());
+        }
+        export(metrics, mode, graph, format, outDir, monitor.getCancelMessage());
+        graphs.put(mode, new SavedGraph(mode, graph.getNumNodes(), graph.getNumEdges(), monitor.getCancelMessage(),
+            graph));
+        continue;
+      }
+      AnalysisOptions options = makeAnalysisOptions(entryPoints);
+
+      // Build the call graph
+      Log.info("Building call graph.");
+      long start_time = System.currentTimeMillis();
+
+      CallGraph callGraph;
+      try (PhaseMetrics.Phase phase = metrics.start("call_graph")) {
+        if (mode.equals("auto")) {
+          AutoCallGraph.Result result = AutoCallGraph.build(cha, options, cache, monitor,
+              heapBudget * 1024 * 1024, extraLibs);
+          callGraph = result.callGraph;
+          mode = result.ctxMode;
+        } else {
+          // Select context sensitivity mode
+          CallGraphBuilder<?> builder = makeBuilder(mode, options, cache, cha);
+
+          monitor.restart();
+          monitor.track(builder, mode);
+          try {
+            callGraph = builder.makeCallGraph(options, monitor);
+          } catch (CallGraphBuilderCancelException e) {
+            callGraph = e.getPartialCallGraph();
+            Log.warn("Call graph construction was canceled, saving the partial call graph ("
+                + callGraph.getNumberOfNodes() + " nodes).");
+          }
+        }
+        phase.put("context_mode", mode).count("nodes", callGraph.getNumberOfNodes())
+            .count("edges", numEdges(callGraph));
+      }
+      long end_time = System.currentTimeMillis();
+      Log.done(
+          "Finished construction of call graph. Took "
+              + Long.toString(end_time - start_time)
+              + " milliseconds.");
+
+      // Save call graph
+      if (level.equals("method")) {
+        long exportStart = System.currentTimeMillis();
+        File methodGraphFile = new File(outDir, "method_graph_" + mode + (format.equals("json") ? ".json" : ""));
+        int numEdges;
+        try (PhaseMetrics.Phase phase = metrics.start("export").put("context_mode", mode)) {
+          numEdges = format.equals("json")
+              ? MethodGraphWriter.write(callGraph, methodGraphFile, monitor.getCancelMessage())
+              : Neo4jCsvWriter.write(callGraph, methodGraphFile);
+          phase.count("nodes", callGraph.getNumberOfNodes()).count("edges", numEdges);
+        }
+        Log.info("Saving method graph (" + callGraph.getNumberOfNodes() + " nodes, " + numEdges + " edges) to "
+            + methodGraphFile.getAbsolutePath() + " in " + (System.currentTimeMillis() - exportStart)
+            + " milliseconds.");
+        graphs.put(mode, new SavedGraph(mode, callGraph.getNumberOfNodes(), numEdges, monitor.getCancelMessage(),
+            null));
+        continue;
+      }
+      long projectionStart = System.currentTimeMillis();
+      ClassGraph classGraph;
+      try (PhaseMetrics.Phase phase = metrics.start("projection").put("context_mode", mode)) {
+        phase.threads(projection.equals("full") ? config.getProjectionThreads() : 1);
+        classGraph = project(callGraph, classMetrics, projection, config.getProjectionThreads());
+        phase.count("class_nodes", classGraph.getNumNodes()).count("class_edges", classGraph.getNumEdges());
+      }
+      long projectionMillis = System.currentTimeMillis() - projectionStart;
+      if (projection.equals("full")) {
+        Log.done("Projected all " + callGraph.getNumberOfNodes() + " call graph nodes on "
+            + config.getProjectionThreads() + " threads in " + projectionMillis
+            + " milliseconds: " + classGraph.getNumEdges() + " class edges.");
+      } else {
+        Log.done("Projected call graph in " + projectionMillis + " milliseconds: " + classGraph.getNumEdges()
+            + " class edges.");
+      }
+      export(metrics, mode, classGraph, format, outDir, monitor.getCancelMessage());
+      graphs.put(mode, new SavedGraph(mode, classGraph.getNumNodes(), classGraph.getNumEdges(),
+          monitor.getCancelMessage(), classGraph));
+    }
+
+    // Experiment mode dump...
+    if (config.getExperimental()) {
+      try (FileWriter writer = new FileWriter(new File( outDir, "classes_in_class_hierarchy.txt"))) {
+        for (IClass c : cha) {
+          if (AnalysisUtils.isApplicationClass(c))
+            writer.write(c.getName() + "\n");
+        }
+      } catch (FileNotFoundException e) {
+        throw e;
+      } catch (IOException e) {
+        Log.error("Something went wrong");
+      }
+    }
+    return new Result(graphs);
+  }
+
+  private static void export(PhaseMetrics metrics, String mode, ClassGraph graph, String format, String outDir,
+      String incompleteReason) throws IOException {
+    try (PhaseMetrics.Phase phase = metrics.start("export").put("context_mode", mode)) {
+      saveClassGraph(graph, format, outDir, "call_graph_" + mode, incompleteReason);
+      phase.count("nodes", graph.getNumNodes()).count("edges", graph.getNumEdges());
+    }
+  }
+
+  private static int numModules(AnalysisScope scope) {
+    int numModules = 0;
+    for (ClassLoaderReference loader : scope.getLoaders()) {
+      numModules += scope.getModules(loader).size();
+    }
+    return numModules;
+  }
+
+  static long numEdges(CallGraph callGraph) {
+    long numEdges = 0;
+    for (CGNode node : callGraph) {
+      numEdges += callGraph.getSuccNodeCount(node);
+    }
+    return numEdges;
+  }
+
+  /**
+   * @param graph
+   * @param format           json, neo4j-csv or binary.
+   * @param outDir
+   * @param name             File name (json, binary) or directory name
+   *                         (neo4j-csv), without extension.
+   * @param incompleteReason Why the graph is incomplete, or null if it is
+   *                         complete.
+   * @throws IOException
+   */
+  private static void saveClassGraph(ClassGraph graph, String format, String outDir, String name,
+      String incompleteReason) throws IOException {
+    if (format.equals("neo4j-csv")) {
+      File dir = new File(outDir, name);
+      Neo4jCsvWriter.write(graph, dir);
+      Log.info("Saving graph to " + dir.getAbsolutePath() + ".");
+      if (incompleteReason != null) {
+        Log.warn("The saved graph is incomplete: " + incompleteReason);
+      }
+    } else if (format.equals("binary")) {
+      saveBinaryGraph(graph, outDir, name + ".bin", incompleteReason);
+      Log.info("Saving graph to " + (new File(outDir, name + ".bin")).getAbsolutePath().toString() + ".");
+    } else {
+      saveGraph(graph, outDir, name + ".json", incompleteReason);
+      Log.info("Saving graph to " + (new File(outDir, name + ".json")).getAbsolutePath().toString() + ".");
+    }
+  }
+
+  /**
+   * @param timeBudget Time budget in seconds, or 0 for none.
+   * @param heapBudget Heap budget in MB, or 0 for none.
+   * @return BudgetMonitor
+   */
+  private static BudgetMonitor makeBudgetMonitor(long timeBudget, long heapBudget) {
+    if (timeBudget > 0) {
+      Log.info("Call graph construction is limited to " + timeBudget + " seconds.");
+    }
+    if (heapBudget > 0) {
+      Log.info("Call graph construction is limited to " + heapBudget + " MB of live heap.");
+    }
+    return new BudgetMonitor(timeBudget * 1000, heapBudget * 1024 * 1024);
+  }
+
+  /**
+   * @param config
+   * @param cha
+   * @return Iterable<Entrypoint>
+   * @throws IOException
+   */
+  private static Iterable<Entrypoint> getEntryPoints(Config config, IClassHierarchy cha) throws IOException {
+    if (config.getEntrypoints().equals("framework")) {
+      Iterable<Entrypoint> entryPoints = FrameworkEntrypoints.getEntryPoints(cha,
+          JarUtils.findDescriptorClasses(config.getInput()));
+      if (!entryPoints.iterator().hasNext()) {
+        Log.warn("No framework entrypoints found, falling back to all public methods.");
+        return AnalysisUtils.getEntryPoints(cha);
+      }
+      return entryPoints;
+    }
+    return AnalysisUtils.getEntryPoints(cha);
+  }
+
+  /**
+   * @param entryPoints
+   * @return AnalysisOptions
+   */
+  static AnalysisOptions makeAnalysisOptions(Iterable<Entrypoint> entryPoints) {
+    AnalysisOptions options = new AnalysisOptions();
+    options.setEntrypoints(entryPoints);
+    options.getSSAOptions().setDefaultValues(SymbolTable::getDefaultValue);
+    options.setReflectionOptions(ReflectionOptions.NONE);
+    return options;
+  }
+
+  /**
+   * @param ctxMode One of rta, zero, zero-one.
+   * @param options
+   * @param cache
+   * @param cha
+   * @return CallGraphBuilder<?>
+   */
+  static CallGraphBuilder<?> makeBuilder(String ctxMode, AnalysisOptions options, IAnalysisCacheView cache,
+      IClassHierarchy cha) {
+    if (ctxMode.equals("zero")) {
+      Log.info("Using ZeroCFA.");
+      return new ZeroCFABuilderFactory().make(options, cache, cha);
+    } else if (ctxMode.equals("zero-one")) {
+      Log.info("Using ZeroOneCFA.");
+      return new ZeroOneCFABuilderFactory().make(options, cache, cha);
+    } else if (ctxMode.equals("rta")) {
+      Log.info("Using RTA.");
+      return Util.makeRTABuilder(options, cache, cha);
+    } else {
+      Log.error("Context mode " + ctxMode + " is not recognized. Choose one of RTA, Zero, Zero-One, Auto.");
+      throw new IllegalArgumentException();
+    }
+  }
+
+  /**
+   * @param callGraph
+   * @param classMetrics
+   * @return ClassGraph
+   */
+  static ClassGraph getClassGraph(CallGraph callGraph, ClassMetricsTable classMetrics) {
+    return getClassGraph(callGraph, classMetrics, true);
+  }
+
+  /**
+   * @param callGraph
+   * @param classMetrics
+   * @param distinctLabels Whether an edge is dropped when an earlier edge
+   *                       carries the same pair of method names.
+   * @return ClassGraph
+   */
+  static ClassGraph getClassGraph(CallGraph callGraph, ClassMetricsTable classMetrics, boolean distinctLabels) {
+    ClassGraph graph = new ClassGraph(distinctLabels);
+    for (CGNode entrypointNode : callGraph.getEntrypointNodes()) {
+      IMethod entryMethod = entrypointNode.getMethod();
+      // Create a node for the source class
+      CallGraphNode source = classMetrics.get(entryMethod.getDeclaringClass());
+      // Get all callsites that may execute in a given method
+      Iterator<CallSiteReference> outGoingCalls = entrypointNode.iterateCallSites();
+      for (Iterator<CallSiteReference> it = outGoingCalls; it.hasNext();) {
+        CallSiteReference callSiteReference = it.next();
+        for (CGNode callTarget : callGraph.getPossibleTargets(entrypointNode,
+            callSiteReference)) {
+          if (AnalysisUtils.isApplicationClass(callTarget.getMethod().getDeclaringClass())) {
+            // Create a node for the target class
+            IClass targetClass = callTarget.getMethod().getDeclaringClass();
+            CallGraphNode target = classMetrics.get(targetClass);
+
+            // Ignore self references
+            if (source.equals(target)) {
+              continue;
+            }
+
+            // Add the vertices and the edge, or increment the weight of the edge
+            int sourceId = graph.addNode(source);
+            int targetId = graph.addNode(target);
+            graph.addEdge(sourceId, targetId, entryMethod.getName(), callTarget.getMethod().getName(), 1.0);
+          }
+        }
+      }
+    }
+    return graph;
+  }
+
+  /**
+   * @param callGraph
+   * @param classMetrics
+   * @param projection   entrypoints or full.
+   * @param threads      Number of threads of the full projection.
+   * @return ClassGraph
+   */
+  static ClassGraph project(CallGraph callGraph, ClassMetricsTable classMetrics, String projection,
+      int threads) {
+    return projection.equals("full") ? FullProjection.project(callGraph, classMetrics, threads)
+        : getClassGraph(callGraph, classMetrics);
+  }
+
+  /**
+   * @param callGraph
+   * @param outPath
+   * @param outFile
+   */
+  public static void saveCallGraph(CallGraph callGraph, String outPath, String outFile) {
+    try {
+      saveCallGraph(callGraph, new ClassMetricsTable(), outPath, outFile, null);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * @param callGraph
+   * @param classMetrics     Class metrics shared by all graphs of the run.
+   * @param outPath
+   * @param outFile
+   * @param incompleteReason Why the call graph is incomplete, or null if it is
+   *                         complete.
+   * @throws IOException
+   */
+  public static void saveCallGraph(CallGraph callGraph, ClassMetricsTable classMetrics, String outPath,
+      String outFile, String incompleteReason) throws IOException {
+    saveGraph(getClassGraph(callGraph, classMetrics), outPath, outFile, incompleteReason);
+  }
+
+  /**
+   * Save a graph in the binary format read by {@link BinaryGraphReader}.
+   *
+   * @param graph
+   * @param outPath
+   * @param outFile
+   * @param incompleteReason Why the graph is incomplete, or null if it is
+   *                         complete.
+   * @throws IOException
+   */
+  public static void saveBinaryGraph(ClassGraph graph, String outPath, String outFile, String incompleteReason)
+      throws IOException {
+    BinaryGraphWriter.write(graph, new File(outPath, outFile), incompleteReason);
+  }
+
+  /**
+   * @param graph
+   * @param outPath
+   * @param outFile
+   */
+  public static void saveGraph(Graph<CallGraphNode, CallGraphEdge> graph, String outPath, String outFile) {
+    saveGraph(graph, outPath, outFile, null);
+  }
+
+  /**
+   * @param graph
+   * @param outPath
+   * @param outFile
+   * @param incompleteReason Why the graph is incomplete, or null if it is
+   *                         complete.
+   * @throws IOException
+   */
+  public static void saveGraph(ClassGraph graph, String outPath, String outFile, String incompleteReason)
+      throws IOException {
+    GraphJsonWriter.write(graph, new File(outPath, outFile), incompleteReason);
+  }
+
+  /**
+   * @param graph
+   * @param outPath
+   * @param outFile
+   * @param incompleteReason Why the graph is incomplete, or null if it is
+   *                         complete.
+   */
+  public static void saveGraph(Graph<CallGraphNode, CallGraphEdge> graph, String outPath, String outFile,
+      String incompleteReason) {
+    if (incompleteReason != null) {
+      // JSONExporter ignores graph attributes, so it cannot flag the graph.
+      try {
+        GraphJsonWriter.write(ClassGraph.fromGraph(graph), new File(outPath, outFile), incompleteReason);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      return;
+    }
+    JSONExporter<CallGraphNode, CallGraphEdge> exporter = new JSONExporter<>(v -> v.className);
+    exporter.setVertexAttributeProvider((v) -> {
+      Map<String, Attribute> map = new LinkedHashMap<>();
+      map.put("is_class_private",
+          DefaultAttribute.createAttribute(v.getIsPrivate()));
+      map.put("num_total_fields",
+          DefaultAttribute.createAttribute(v.getNum_fields()));
+      map.put("num_static_fields",
+          DefaultAttribute.createAttribute(v.getNum_static_fields()));
+      map.put("num_instance_fields",
+          DefaultAttribute.createAttribute(v.getNum_instance_fields()));
+      map.put("num_total_methods",
+          DefaultAttribute.createAttribute(v.getNum_declared_methods()));
+      map.put("num_static_methods",
+          DefaultAttribute.createAttribute(v.getNum_static_methods()));
+      return map;
+    });
+    exporter.setEdgeAttributeProvider((e) -> {
+      Map<String, Attribute> map = new LinkedHashMap<>();
+      map.put("weight", DefaultAttribute.createAttribute(e.getWeight()));
+      return map;
+    });
+    // Export the graph to JSON
+    exporter.exportGraph(graph, new File(outPath, outFile));
+  }
+}
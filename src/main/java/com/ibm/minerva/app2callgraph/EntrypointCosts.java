@@ -0,0 +1,159 @@
+/*
+Copyright IBM Corporation 2023
+
+Licensed under the Apache Public License 2.0, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ibm.minerva.app2callgraph;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.ibm.minerva.app2callgraph.utils.BudgetMonitor;
+import com.ibm.minerva.app2callgraph.utils.Log;
+import com.ibm.wala.cast.ir.ssa.AstIRFactory;
+import com.ibm.wala.ipa.callgraph.AnalysisCacheImpl;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.CallGraphBuilder;
+import com.ibm.wala.ipa.callgraph.CallGraphBuilderCancelException;
+import com.ibm.wala.ipa.callgraph.Entrypoint;
+import com.ibm.wala.ipa.callgraph.IAnalysisCacheView;
+import com.ibm.wala.ipa.cha.IClassHierarchy;
+import com.ibm.wala.types.MethodReference;
+
+/**
+ * Attributes the cost of call graph construction to entry surfaces: groups of
+ * entrypoints by method, class or package.
+ *
+ * <p>
+ * An evenly spread sample of the groups ({@value #DEFAULT_SAMPLE} unless
+ * another size, or all, is asked for) gets isolated call graphs of their own
+ * against the shared class hierarchy, built one after the other so their times
+ * do not interfere. Each group is measured by its call graph nodes, the methods
+ * they stand for, the extra contexts (nodes beyond one per method) that context
+ * sensitivity adds, its edges and the time to build it, IR included. The budget
+ * of the analysis applies to each group on its own, and a time budget is
+ * required so that the measurement stays bounded; a group that exhausts it is
+ * reported with its partial graph as incomplete. Groups share code, so their
+ * costs overlap and do not add up to the cost of the whole analysis.
+ */
+public class EntrypointCosts {
+
+  /** Number of groups measured unless another sample size is given. */
+  public static final int DEFAULT_SAMPLE = 100;
+
+  /**
+   * @param cha         The class hierarchy.
+   * @param entryPoints The entrypoints to group.
+   * @param ctxMode     One of rta, zero, zero-one.
+   * @param costBy      Grouping: method, class or package.
+   * @param sample      Number of groups to measure, or 0 for all.
+   * @param top         Number of most expensive groups to log.
+   * @param outDir      Directory the report is written to.
+   * @param monitor     Budget of each group's call graph.
+   * @return int : The number of groups measured.
+   * @throws IOException
+   */
+  public static int measure(IClassHierarchy cha, Iterable<Entrypoint> entryPoints, String ctxMode, String costBy,
+      int sample, int top, String outDir, BudgetMonitor monitor) throws IOException {
+    Map<String, List<Entrypoint>> groups = new TreeMap<>();
+    for (Entrypoint entryPoint : entryPoints) {
+      String key = costBy.equals("method") ? entryPoint.getMethod().getSignature()
+          : ShardedCallGraph.groupKey(entryPoint, costBy);
+      groups.computeIfAbsent(key, k -> new ArrayList<>()).add(entryPoint);
+    }
+    List<String> keys = sample(new ArrayList<>(groups.keySet()), sample);
+    Log.info("Measuring the call graph cost of " + keys.size() + " of " + groups.size() + " entrypoint groups by "
+        + costBy + ".");
+
+    List<JSONObject> costs = new ArrayList<>();
+    for (String key : keys) {
+      costs.add(measureGroup(cha, key, groups.get(key), ctxMode, monitor));
+    }
+    costs.sort((a, b) -> a.getInt("nodes") != b.getInt("nodes")
+        ? Integer.compare(b.getInt("nodes"), a.getInt("nodes"))
+        : Long.compare(b.getLong("millis"), a.getLong("millis")));
+
+    Log.done("Most expensive entrypoint groups by call graph nodes:");
+    for (int i = 0; i < Math.min(top, costs.size()); i++) {
+      JSONObject cost = costs.get(i);
+      Log.done("  " + (i + 1) + ". " + cost.getString("group") + ": " + cost.getInt("nodes") + " nodes, "
+          + cost.getInt("extra_contexts") + " extra contexts, " + cost.getLong("millis") + " milliseconds"
+          + (cost.getBoolean("complete") ? "." : " (incomplete)."));
+    }
+
+    JSONObject report = new JSONObject()
+        .put("context_mode", ctxMode)
+        .put("cost_by", costBy)
+        .put("num_groups", groups.size())
+        .put("num_measured", keys.size())
+        .put("top", new JSONArray(costs.subList(0, Math.min(top, costs.size()))))
+        .put("groups", new JSONArray(costs));
+    File reportFile = new File(outDir, "entrypoint_costs_" + ctxMode + ".json");
+    try (FileWriter writer = new FileWriter(reportFile)) {
+      writer.write(report.toString(2));
+    }
+    Log.info("Saving entrypoint costs to " + reportFile.getAbsolutePath() + ".");
+    return keys.size();
+  }
+
+  private static JSONObject measureGroup(IClassHierarchy cha, String key, List<Entrypoint> entryPoints,
+      String ctxMode, BudgetMonitor monitor) {
+    AnalysisOptions options = CallGraphAnalysis.makeAnalysisOptions(entryPoints);
+    IAnalysisCacheView cache = new AnalysisCacheImpl(AstIRFactory.makeDefaultFactory(), options.getSSAOptions());
+    monitor.restart();
+    CallGraph callGraph;
+    try {
+      CallGraphBuilder<?> builder = CallGraphAnalysis.makeBuilder(ctxMode, options, cache, cha);
+      monitor.track(builder, ctxMode);
+      callGraph = builder.makeCallGraph(options, monitor);
+    } catch (CallGraphBuilderCancelException e) {
+      callGraph = e.getPartialCallGraph();
+    }
+    long millis = monitor.getElapsedMillis();
+    Set<MethodReference> methods = new HashSet<>();
+    for (CGNode node : callGraph) {
+      methods.add(node.getMethod().getReference());
+    }
+    return new JSONObject()
+        .put("group", key)
+        .put("entrypoints", entryPoints.size())
+        .put("nodes", callGraph.getNumberOfNodes())
+        .put("methods", methods.size())
+        .put("extra_contexts", callGraph.getNumberOfNodes() - methods.size())
+        .put("edges", CallGraphAnalysis.numEdges(callGraph))
+        .put("millis", millis)
+        .put("complete", monitor.getCancelMessage() == null);
+  }
+
+  /** Pick at most sample keys, spread evenly over the sorted keys. */
+  private static List<String> sample(List<String> keys, int sample) {
+    if (sample <= 0 || keys.size() <= sample) {
+      return keys;
+    }
+    List<String> sampled = new ArrayList<>();
+    for (int i = 0; i < sample; i++) {
+      sampled.add(keys.get((int) ((long) i * keys.size() / sample)));
+    }
+    return sampled;
+  }
+}
@@ -0,0 +1,115 @@
+/*
+Copyright IBM Corporation 2023
+
+Licensed under the Apache Public License 2.0, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ibm.minerva.app2callgraph;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import com.ibm.minerva.app2callgraph.entities.CallGraphNode;
+import com.ibm.minerva.app2callgraph.entities.ClassGraph;
+import com.ibm.minerva.app2callgraph.utils.AnalysisUtils;
+import com.ibm.minerva.app2callgraph.utils.ClassMetricsTable;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.util.intset.IntIterator;
+
+/**
+ * Projects every call edge between methods of two different application
+ * classes onto the class graph, not only those leaving entrypoint nodes. The
+ * weight of an edge is the number of caller/callee method pairs between the two
+ * classes.
+ *
+ * <p>
+ * Nodes are visited by number and their successors read as int sets; whether a
+ * node belongs to an application class, and its class node, are looked up once
+ * per node. With more than one thread the node numbers are split into ranges
+ * that are projected into separate graphs on a fork-join pool and merged in
+ * range order, which gives the graph, node and edge order of the serial
+ * projection.
+ */
+public class FullProjection {
+
+  // Ranges per thread, so that uneven ranges still keep every thread busy.
+  private static final int RANGES_PER_THREAD = 4;
+
+  /**
+   * @param callGraph
+   * @param classMetrics
+   * @param threads      Number of threads to project on.
+   * @return ClassGraph
+   */
+  public static ClassGraph project(CallGraph callGraph, ClassMetricsTable classMetrics, int threads) {
+    int maxNumber = callGraph.getMaxNumber();
+    BitSet application = new BitSet(maxNumber + 1);
+    CallGraphNode[] classNodes = new CallGraphNode[maxNumber + 1];
+    for (int n = 0; n <= maxNumber; n++) {
+      CGNode node = callGraph.getNode(n);
+      if (node != null && AnalysisUtils.isApplicationClass(node.getMethod().getDeclaringClass())) {
+        application.set(n);
+        classNodes[n] = classMetrics.get(node.getMethod().getDeclaringClass());
+      }
+    }
+    if (threads <= 1) {
+      return projectRange(callGraph, application, classNodes, 0, maxNumber + 1);
+    }
+
+    int ranges = threads * RANGES_PER_THREAD;
+    int rangeSize = (maxNumber + ranges) / ranges;
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    List<ClassGraph> parts;
+    try {
+      parts = pool.submit(() -> IntStream.range(0, ranges).parallel()
+          .mapToObj(r -> projectRange(callGraph, application, classNodes, r * rangeSize,
+              Math.min((r + 1) * rangeSize, maxNumber + 1)))
+          .collect(Collectors.toList())).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while projecting the call graph", e);
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause());
+    } finally {
+      pool.shutdown();
+    }
+    ClassGraph graph = new ClassGraph(false);
+    for (ClassGraph part : parts) {
+      graph.addAll(part);
+    }
+    return graph;
+  }
+
+  private static ClassGraph projectRange(CallGraph callGraph, BitSet application, CallGraphNode[] classNodes,
+      int from, int to) {
+    ClassGraph graph = new ClassGraph(false);
+    for (int n = application.nextSetBit(from); n >= 0 && n < to; n = application.nextSetBit(n + 1)) {
+      CGNode node = callGraph.getNode(n);
+      CallGraphNode source = classNodes[n];
+      for (IntIterator succs = callGraph.getSuccNodeNumbers(node).intIterator(); succs.hasNext();) {
+        int succ = succs.next();
+        // Ignore library targets and self references
+        if (!application.get(succ) || source.equals(classNodes[succ])) {
+          continue;
+        }
+        int sourceId = graph.addNode(source);
+        int targetId = graph.addNode(classNodes[succ]);
+        graph.addEdge(sourceId, targetId, node.getMethod().getName(),
+            callGraph.getNode(succ).getMethod().getName(), 1.0);
+      }
+    }
+    return graph;
+  }
+}
@@ -0,0 +1,283 @@
+/*
+Copyright IBM Corporation 2023
+
+Licensed under the Apache Public License 2.0, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ibm.minerva.app2callgraph;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.ibm.minerva.app2callgraph.entities.ClassGraph;
+import com.ibm.minerva.app2callgraph.utils.BudgetMonitor;
+import com.ibm.minerva.app2callgraph.utils.ClassMetricsTable;
+import com.ibm.minerva.app2callgraph.utils.Log;
+import com.ibm.wala.cast.ir.ssa.AstIRFactory;
+import com.ibm.wala.ipa.callgraph.AnalysisCacheImpl;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.CallGraphBuilderCancelException;
+import com.ibm.wala.ipa.callgraph.Entrypoint;
+import com.ibm.wala.ipa.callgraph.IAnalysisCacheView;
+import com.ibm.wala.ipa.callgraph.impl.DefaultEntrypoint;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.ipa.cha.IClassHierarchy;
+
+/**
+ * Builds the call graph of an application as a set of independent shards.
+ *
+ * <p>
+ * The entrypoints are partitioned by package or by class, each shard's call
+ * graph is built on its own thread, and the class-level projections of the
+ * shards are merged into one graph. Edge weights are summed, so when every
+ * shard reaches the same targets as the monolithic analysis the merged graph
+ * equals the monolithic one. Unlike a single run, the entrypoints projection
+ * keeps class edges that carry the same pair of method names as another edge,
+ * in the shards and in the monolithic comparison alike, so the merged graph
+ * never holds an edge the monolithic analysis does not find.
+ *
+ * <p>
+ * WALA's classes resolve and cache their members lazily (e.g. the inherited
+ * method cache of a class and the decoded bytecode of its methods) without any
+ * synchronization, so a class hierarchy cannot be shared between threads that
+ * build call graphs. Every shard gets a class hierarchy of its own, made from
+ * the same scope, and its entrypoints are bound to it.
+ */
+public class ShardedCallGraph {
+
+  /** Makes a fresh class hierarchy of the analysis scope. */
+  public interface ClassHierarchySource {
+    IClassHierarchy make() throws ClassHierarchyException;
+  }
+
+  /**
+   * @param cha         The class hierarchy of the entrypoints, also used for the
+   *                    monolithic comparison.
+   * @param shardCha    Makes the class hierarchy of each shard.
+   * @param entryPoints The entrypoints to partition.
+   * @param ctxMode     One of rta, zero, zero-one.
+   * @param numShards   Number of shards.
+   * @param shardBy     Partitioning strategy: package or class.
+   * @param compare     Also build the monolithic graph and report differences.
+   * @param outDir      Directory the shard report is written to.
+   * @param monitor     Shared budget of all shards. When it cancels, each shard
+   *                    contributes its partial call graph.
+   * @param classMetrics Class metrics shared by all shards.
+   * @param projection  entrypoints or full.
+   * @return ClassGraph : The merged class-level graph.
+   * @throws IOException
+   * @throws ClassHierarchyException
+   */
+  public static ClassGraph build(IClassHierarchy cha, ClassHierarchySource shardCha,
+      Iterable<Entrypoint> entryPoints, String ctxMode, int numShards, String shardBy, boolean compare,
+      String outDir, BudgetMonitor monitor, ClassMetricsTable classMetrics, String projection)
+      throws IOException, ClassHierarchyException {
+    List<List<Entrypoint>> shards = partition(entryPoints, numShards, shardBy);
+    Log.info("Building call graph in " + shards.size() + " shards by " + shardBy + ".");
+
+    // Class hierarchies are made one at a time, on this thread.
+    long chaStart = System.currentTimeMillis();
+    List<IClassHierarchy> shardChas = new ArrayList<>();
+    List<List<Entrypoint>> shardEntryPoints = new ArrayList<>();
+    for (List<Entrypoint> shard : shards) {
+      IClassHierarchy c = shardCha.make();
+      shardChas.add(c);
+      shardEntryPoints.add(bind(shard, c));
+    }
+    long chaMillis = System.currentTimeMillis() - chaStart;
+    Log.done("Made " + shards.size() + " shard class hierarchies in " + chaMillis + " milliseconds.");
+
+    JSONObject report = new JSONObject();
+    report.put("context_mode", ctxMode);
+    report.put("shard_by", shardBy);
+    report.put("num_shards", shards.size());
+    report.put("class_hierarchy_millis", chaMillis);
+
+    long start = System.currentTimeMillis();
+    monitor.restart();
+    ExecutorService executor = Executors.newFixedThreadPool(shards.size());
+    List<Future<ClassGraph>> futures = new ArrayList<>();
+    long[] shardMillis = new long[shards.size()];
+    for (int i = 0; i < shards.size(); i++) {
+      final int shard = i;
+      futures.add(executor.submit(() -> {
+        long shardStart = System.currentTimeMillis();
+        ClassGraph graph = buildProjection(shardChas.get(shard), shardEntryPoints.get(shard), ctxMode, monitor,
+            classMetrics, projection);
+        shardMillis[shard] = System.currentTimeMillis() - shardStart;
+        Log.done("Shard " + shard + ": " + shards.get(shard).size() + " entrypoints, "
+            + graph.getNumEdges() + " edges in " + shardMillis[shard] + " milliseconds.");
+        return graph;
+      }));
+    }
+    executor.shutdown();
+
+    ClassGraph merged = new ClassGraph(false);
+    JSONArray shardReports = new JSONArray();
+    try {
+      for (int i = 0; i < futures.size(); i++) {
+        ClassGraph graph = futures.get(i).get();
+        merged.addAll(graph);
+        shardReports.put(new JSONObject()
+            .put("entrypoints", shards.get(i).size())
+            .put("nodes", graph.getNumNodes())
+            .put("edges", graph.getNumEdges())
+            .put("millis", shardMillis[i]));
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while building shards", e);
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+    long shardedMillis = System.currentTimeMillis() - start;
+    Log.done("Finished sharded construction of call graph. Took " + shardedMillis + " milliseconds.");
+    report.put("shards", shardReports);
+    report.put("millis", shardedMillis);
+    report.put("nodes", merged.getNumNodes());
+    report.put("edges", merged.getNumEdges());
+    report.put("complete", monitor.getCancelMessage() == null);
+
+    if (compare && monitor.getCancelMessage() == null) {
+      Log.info("Building monolithic call graph for comparison.");
+      long monolithicStart = System.currentTimeMillis();
+      List<Entrypoint> all = new ArrayList<>();
+      shards.forEach(all::addAll);
+      monitor.restart();
+      ClassGraph monolithic = buildProjection(cha, all, ctxMode, monitor, classMetrics, projection);
+      long monolithicMillis = System.currentTimeMillis() - monolithicStart;
+      Set<String> shardedEdges = edgeKeys(merged);
+      Set<String> monolithicEdges = edgeKeys(monolithic);
+      Set<String> onlySharded = new HashSet<>(shardedEdges);
+      onlySharded.removeAll(monolithicEdges);
+      Set<String> onlyMonolithic = new HashSet<>(monolithicEdges);
+      onlyMonolithic.removeAll(shardedEdges);
+      Log.done("Monolithic call graph: " + monolithic.getNumEdges() + " edges in " + monolithicMillis
+          + " milliseconds; " + onlySharded.size() + " edges only in the sharded graph, " + onlyMonolithic.size()
+          + " edges only in the monolithic graph.");
+      report.put("monolithic", new JSONObject()
+          .put("millis", monolithicMillis)
+          .put("nodes", monolithic.getNumNodes())
+          .put("edges", monolithic.getNumEdges())
+          .put("edges_only_in_sharded", new JSONArray(sorted(onlySharded)))
+          .put("edges_only_in_monolithic", new JSONArray(sorted(onlyMonolithic))));
+    }
+
+    File reportFile = new File(outDir, "shard_report_" + ctxMode + ".json");
+    try (FileWriter writer = new FileWriter(reportFile)) {
+      writer.write(report.toString(2));
+    }
+    Log.info("Saving shard report to " + reportFile.getAbsolutePath() + ".");
+    return merged;
+  }
+
+  /**
+   * Group the entrypoints by package or class and deal the groups, largest
+   * first, to the least loaded shard. Groups are visited in name order so the
+   * partition is deterministic.
+   */
+  static List<List<Entrypoint>> partition(Iterable<Entrypoint> entryPoints, int numShards, String shardBy) {
+    if (!shardBy.equals("package") && !shardBy.equals("class")) {
+      Log.error("Shard strategy " + shardBy + " is not recognized. Choose one of package, class.");
+      throw new IllegalArgumentException();
+    }
+    Map<String, List<Entrypoint>> groups = new TreeMap<>();
+    for (Entrypoint entryPoint : entryPoints) {
+      groups.computeIfAbsent(groupKey(entryPoint, shardBy), k -> new ArrayList<>()).add(entryPoint);
+    }
+    List<List<Entrypoint>> ordered = new ArrayList<>(groups.values());
+    ordered.sort((a, b) -> Integer.compare(b.size(), a.size()));
+
+    List<List<Entrypoint>> shards = new ArrayList<>();
+    for (int i = 0; i < Math.max(1, Math.min(numShards, ordered.size())); i++) {
+      shards.add(new ArrayList<>());
+    }
+    for (List<Entrypoint> group : ordered) {
+      List<Entrypoint> smallest = shards.get(0);
+      for (List<Entrypoint> shard : shards) {
+        if (shard.size() < smallest.size()) {
+          smallest = shard;
+        }
+      }
+      smallest.addAll(group);
+    }
+    return shards;
+  }
+
+  /**
+   * @param entryPoint
+   * @param groupBy    package or class.
+   * @return String : The package or class of the entrypoint's method.
+   */
+  static String groupKey(Entrypoint entryPoint, String groupBy) {
+    String className = entryPoint.getMethod().getDeclaringClass().getName().toString();
+    return groupBy.equals("class") || className.lastIndexOf('/') < 0 ? className
+        : className.substring(0, className.lastIndexOf('/'));
+  }
+
+  private static ClassGraph buildProjection(IClassHierarchy cha,
+      List<Entrypoint> entryPoints, String ctxMode, BudgetMonitor monitor, ClassMetricsTable classMetrics,
+      String projection) {
+    AnalysisOptions options = CallGraphAnalysis.makeAnalysisOptions(entryPoints);
+    IAnalysisCacheView cache = new AnalysisCacheImpl(AstIRFactory.makeDefaultFactory(), options.getSSAOptions());
+    CallGraph callGraph;
+    try {
+      callGraph = CallGraphAnalysis.makeBuilder(ctxMode, options, cache, cha).makeCallGraph(options, monitor);
+    } catch (CallGraphBuilderCancelException e) {
+      callGraph = e.getPartialCallGraph();
+      Log.warn("Shard canceled, keeping its partial call graph (" + callGraph.getNumberOfNodes() + " nodes).");
+    }
+    // Which edge keeps a pair of method names depends on the order a run sees
+    // them in, so shards keep every class edge and can be merged.
+    return projection.equals("full") ? FullProjection.project(callGraph, classMetrics, 1)
+        : CallGraphAnalysis.getClassGraph(callGraph, classMetrics, false);
+  }
+
+  /** @return List<Entrypoint> : The entrypoints, resolved in the given class hierarchy. */
+  private static List<Entrypoint> bind(List<Entrypoint> entryPoints, IClassHierarchy cha) {
+    List<Entrypoint> bound = new ArrayList<>();
+    for (Entrypoint entryPoint : entryPoints) {
+      bound.add(new DefaultEntrypoint(entryPoint.getMethod().getReference(), cha));
+    }
+    return bound;
+  }
+
+  private static Set<String> edgeKeys(ClassGraph graph) {
+    Set<String> keys = new HashSet<>();
+    for (int e = 0; e < graph.getNumEdges(); e++) {
+      keys.add(graph.getNode(graph.getSource(e)) + " -> " + graph.getNode(graph.getTarget(e)));
+    }
+    return keys;
+  }
+
+  private static List<String> sorted(Set<String> keys) {
+    List<String> list = new ArrayList<>(keys);
+    Collections.sort(list);
+    return list;
+  }
+}
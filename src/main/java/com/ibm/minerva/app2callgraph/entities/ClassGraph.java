@@ -0,0 +1,255 @@
+package com.ibm.minerva.app2callgraph.entities;
+
+import com.ibm.wala.core.util.strings.Atom;
+import org.jgrapht.Graph;
+import org.jgrapht.graph.DefaultDirectedGraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class-level call graph with dense int ids. Classes are numbered in the order
+ * they are added and edges are kept in parallel primitive arrays indexed
+ * through an open-addressing table keyed by (source id, target id), so adding
+ * or re-weighting an edge does not allocate.
+ *
+ * <p>
+ * Nodes and edges keep their insertion order. A graph with distinct labels
+ * rejects an edge exactly when {@link DefaultDirectedGraph} would reject its
+ * {@link CallGraphEdge} (whose equality is that of its method names), so
+ * {@link #toGraph()} yields the same graph the entrypoint projection used to
+ * build directly.
+ */
+public class ClassGraph {
+    private final List<CallGraphNode> nodes = new ArrayList<>();
+    private final Map<CallGraphNode, Integer> nodeIds = new HashMap<>();
+    private final List<Atom> labels = new ArrayList<>();
+    private final Map<Atom, Integer> labelIds = new HashMap<>();
+
+    private int numEdges;
+    private int[] sources = new int[16];
+    private int[] targets = new int[16];
+    private int[] sourceLabels = new int[16];
+    private int[] targetLabels = new int[16];
+    private double[] weights = new double[16];
+
+    private final LongIntMap edgeIndex = new LongIntMap();
+    private final LongIntMap labelPairs = new LongIntMap();
+    private final boolean distinctLabels;
+
+    /** Create a graph in which no two edges carry the same pair of labels. */
+    public ClassGraph() {
+        this(true);
+    }
+
+    /**
+     * @param distinctLabels Whether an edge carrying the same pair of labels as
+     *                       another edge is rejected.
+     */
+    public ClassGraph(boolean distinctLabels) {
+        this.distinctLabels = distinctLabels;
+    }
+
+    /**
+     * Add a node unless it is already present.
+     *
+     * @return int : The id of the node.
+     */
+    public int addNode(CallGraphNode node) {
+        Integer id = nodeIds.get(node);
+        if (id == null) {
+            id = nodes.size();
+            nodes.add(node);
+            nodeIds.put(node, id);
+        }
+        return id;
+    }
+
+    /**
+     * Add weight to the edge from source to target, creating the edge if needed.
+     *
+     * @return boolean : False if the edge did not exist and could not be created
+     *         because labels are distinct and another edge already carries the
+     *         same pair of labels.
+     */
+    public boolean addEdge(int source, int target, Atom sourceLabel, Atom targetLabel, double weight) {
+        long key = pair(source, target);
+        int edge = edgeIndex.get(key);
+        if (edge >= 0) {
+            weights[edge] += weight;
+            return true;
+        }
+        int sourceLabelId = labelId(sourceLabel);
+        int targetLabelId = labelId(targetLabel);
+        if (distinctLabels && !labelPairs.putIfAbsent(pair(sourceLabelId, targetLabelId), numEdges)) {
+            return false;
+        }
+        if (numEdges == sources.length) {
+            int capacity = numEdges * 2;
+            sources = Arrays.copyOf(sources, capacity);
+            targets = Arrays.copyOf(targets, capacity);
+            sourceLabels = Arrays.copyOf(sourceLabels, capacity);
+            targetLabels = Arrays.copyOf(targetLabels, capacity);
+            weights = Arrays.copyOf(weights, capacity);
+        }
+        sources[numEdges] = source;
+        targets[numEdges] = target;
+        sourceLabels[numEdges] = sourceLabelId;
+        targetLabels[numEdges] = targetLabelId;
+        weights[numEdges] = weight;
+        edgeIndex.putIfAbsent(key, numEdges);
+        numEdges++;
+        return true;
+    }
+
+    /** Add all nodes and edges of another graph, summing the weights. */
+    public void addAll(ClassGraph other) {
+        int[] ids = new int[other.nodes.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = addNode(other.nodes.get(i));
+        }
+        for (int e = 0; e < other.numEdges; e++) {
+            addEdge(ids[other.sources[e]], ids[other.targets[e]], other.getSourceLabel(e),
+                    other.getTargetLabel(e), other.weights[e]);
+        }
+    }
+
+    public int getNumNodes() {
+        return nodes.size();
+    }
+
+    public int getNumEdges() {
+        return numEdges;
+    }
+
+    public CallGraphNode getNode(int id) {
+        return nodes.get(id);
+    }
+
+    public int getSource(int edge) {
+        return sources[edge];
+    }
+
+    public int getTarget(int edge) {
+        return targets[edge];
+    }
+
+    public Atom getSourceLabel(int edge) {
+        return labels.get(sourceLabels[edge]);
+    }
+
+    public Atom getTargetLabel(int edge) {
+        return labels.get(targetLabels[edge]);
+    }
+
+    public double getWeight(int edge) {
+        return weights[edge];
+    }
+
+    /**
+     * @return ClassGraph : A copy of a JGraphT graph, with its nodes and edges in
+     *         the same order.
+     */
+    public static ClassGraph fromGraph(Graph<CallGraphNode, CallGraphEdge> graph) {
+        ClassGraph classGraph = new ClassGraph(false);
+        for (CallGraphNode node : graph.vertexSet()) {
+            classGraph.addNode(node);
+        }
+        for (CallGraphEdge edge : graph.edgeSet()) {
+            classGraph.addEdge(classGraph.addNode(graph.getEdgeSource(edge)),
+                    classGraph.addNode(graph.getEdgeTarget(edge)), edge.source, edge.destination, edge.getWeight());
+        }
+        return classGraph;
+    }
+
+    /** @return Graph<CallGraphNode, CallGraphEdge> : A JGraphT copy of this graph. */
+    public Graph<CallGraphNode, CallGraphEdge> toGraph() {
+        Graph<CallGraphNode, CallGraphEdge> graph = new DefaultDirectedGraph<>(CallGraphEdge.class);
+        for (CallGraphNode node : nodes) {
+            graph.addVertex(node);
+        }
+        for (int e = 0; e < numEdges; e++) {
+            graph.addEdge(nodes.get(sources[e]), nodes.get(targets[e]),
+                    new CallGraphEdge(getSourceLabel(e), getTargetLabel(e), weights[e]));
+        }
+        return graph;
+    }
+
+    private int labelId(Atom label) {
+        Integer id = labelIds.get(label);
+        if (id == null) {
+            id = labels.size();
+            labels.add(label);
+            labelIds.put(label, id);
+        }
+        return id;
+    }
+
+    private static long pair(int first, int second) {
+        return ((long) first << 32) | (second & 0xffffffffL);
+    }
+
+    /** Open-addressing map from long keys to non-negative int values. */
+    private static final class LongIntMap {
+        private long[] keys = new long[32];
+        private int[] values = newValues(32);
+        private int size;
+
+        int get(long key) {
+            int mask = keys.length - 1;
+            for (int i = hash(key) & mask;; i = (i + 1) & mask) {
+                if (values[i] < 0) {
+                    return -1;
+                }
+                if (keys[i] == key) {
+                    return values[i];
+                }
+            }
+        }
+
+        boolean putIfAbsent(long key, int value) {
+            if ((size + 1) * 2 > keys.length) {
+                resize();
+            }
+            int mask = keys.length - 1;
+            for (int i = hash(key) & mask;; i = (i + 1) & mask) {
+                if (values[i] < 0) {
+                    keys[i] = key;
+                    values[i] = value;
+                    size++;
+                    return true;
+                }
+                if (keys[i] == key) {
+                    return false;
+                }
+            }
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = newValues(oldKeys.length * 2);
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] >= 0) {
+                    putIfAbsent(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        private static int[] newValues(int capacity) {
+            int[] values = new int[capacity];
+            Arrays.fill(values, -1);
+            return values;
+        }
+
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+Copyright IBM Corporation 2023
+
+Licensed under the Apache Public License 2.0, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ibm.minerva.app2callgraph.utils;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * Java Flight Recorder events of an analysis, so its phases, module loads and
+ * solver progress line up with the CPU, allocation and GC data of the same
+ * recording. The events cost next to nothing unless a recording enables them,
+ * e.g. one started with --jfr or -XX:StartFlightRecording. On a JVM without
+ * the flight recorder they do nothing at all.
+ */
+public final class AnalysisEvents {
+
+  private static final boolean AVAILABLE = isFlightRecorderAvailable();
+
+  private static final PhaseSpan NO_SPAN = new PhaseSpan() {
+    @Override
+    public void setContextMode(String contextMode) {
+    }
+
+    @Override
+    public void end() {
+    }
+  };
+
+  private AnalysisEvents() {
+  }
+
+  /** An event that has begun. */
+  public interface Span {
+    /** Commit the event, when its work is done. */
+    void end();
+  }
+
+  /** A phase of an analysis, as recorded in metrics.json. */
+  public interface PhaseSpan extends Span {
+    void setContextMode(String contextMode);
+  }
+
+  /**
+   * @param phase E.g. class_hierarchy.
+   * @return PhaseSpan : An event that has begun; end it when the phase is done.
+   */
+  public static PhaseSpan beginPhase(String phase) {
+    return AVAILABLE ? JfrEvents.beginPhase(phase) : NO_SPAN;
+  }
+
+  /**
+   * @param action E.g. unpack.
+   * @param loader The class loader the module belongs to, or null.
+   * @param path   The archive, directory or class file.
+   * @return Span : An event that has begun; end it when the module is done.
+   */
+  public static Span beginModule(String action, String loader, String path) {
+    return AVAILABLE ? JfrEvents.beginModule(action, loader, path) : NO_SPAN;
+  }
+
+  /**
+   * @return boolean : Whether a recording takes samples of the progress of the
+   *         call graph solver, which are not free to take.
+   */
+  public static boolean isSolverProgressEnabled() {
+    return AVAILABLE && JfrEvents.isSolverProgressEnabled();
+  }
+
+  /**
+   * Record a sample of the progress of the call graph solver.
+   *
+   * @param contextMode    E.g. rta.
+   * @param callGraphNodes Nodes of the call graph so far, or -1 if unknown.
+   * @param worklistSize   Statements left to evaluate, or -1 if unknown.
+   * @param elapsed        Milliseconds since the solver started.
+   */
+  public static void solverProgress(String contextMode, int callGraphNodes, int worklistSize, long elapsed) {
+    if (AVAILABLE) {
+      JfrEvents.solverProgress(contextMode, callGraphNodes, worklistSize, elapsed);
+    }
+  }
+
+  /**
+   * Start a recording with the JDK's profile settings and the events of this
+   * class, written to the given file when it stops or the JVM exits.
+   *
+   * @param file The .jfr file.
+   * @throws IOException If the JVM has no flight recorder.
+   */
+  public static void startRecording(String file) throws IOException {
+    if (!AVAILABLE) {
+      throw new IOException("This JVM has no Java Flight Recorder to record " + file + " with.");
+    }
+    JfrEvents.startRecording(file);
+    Log.info("Recording JFR events to " + Paths.get(file).toAbsolutePath() + ".");
+  }
+
+  private static boolean isFlightRecorderAvailable() {
+    try {
+      Class.forName("jdk.jfr.Event");
+      return true;
+    } catch (ClassNotFoundException | LinkageError e) {
+      return false;
+    }
+  }
+}
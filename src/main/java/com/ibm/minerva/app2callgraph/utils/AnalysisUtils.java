@@ -21,13 +21,9 @@ import com.ibm.wala.ipa.cha.IClassHierarchy;
 import com.ibm.wala.types.ClassLoaderReference;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
 
 public class AnalysisUtils {
 
-  public static Map<String, Map<String, Object>> classAttr = new HashMap<String, Map<String, Object>>();
-
   /**
    * Verify if a class is an application class.
    *
@@ -68,7 +64,7 @@ public class AnalysisUtils {
           }
         } catch (NullPointerException nullPointerException) { // Handle any possible exception.
           Log.error(c.getSourceFileName());
-          System.exit(1);
+          throw new IllegalStateException("Cannot list the methods of " + c.getName(), nullPointerException);
         }
       }
     }
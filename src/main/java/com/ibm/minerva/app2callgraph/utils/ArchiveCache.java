@@ -0,0 +1,344 @@
+/*
+Copyright IBM Corporation 2023
+
+Licensed under the Apache Public License 2.0, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ibm.minerva.app2callgraph.utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Persistent, content-addressed cache of unpacked *.ear/*.war archives.
+ *
+ * <p>
+ * Every archive is unpacked once into {@code <cacheDir>/<sha-256>/unpacked}
+ * along with a {@code layout} file that lists the discovered class roots and
+ * jars. Later runs on an unchanged archive read the layout back and skip
+ * {@link JarUtils#unpackArchives} entirely. The cache is bounded by size: when
+ * it grows past the limit, the least recently used entries are deleted.
+ *
+ * <p>
+ * Class files are read from the entries lazily, for as long as an analysis
+ * runs, so every entry a cache hands out is leased until the cache is closed:
+ * a shared lock on {@code <cacheDir>/<key>.lock} keeps other processes from
+ * evicting it, and a count of holders keeps other analyses in this JVM from
+ * evicting it. Eviction skips leased entries, and deletes the lock file along
+ * with the entry.
+ */
+public class ArchiveCache implements Closeable {
+
+  private static final String LAYOUT = "layout";
+  private static final String UNPACKED = "unpacked";
+  private static final String CLASS_ROOT = "classRoot";
+  private static final String JAR = "jar";
+  private static final String LOCK = ".lock";
+
+  // Entries leased in this JVM. File locks belong to the whole process, so the
+  // JVM holds one shared lock per entry for all the caches that lease it.
+  private static final Map<Path, Lease> LEASES = new HashMap<>();
+
+  private final Path cacheDir;
+  private final long maxBytes;
+  private final List<Path> leased = new ArrayList<>();
+
+  private static final class Lease {
+    private final FileChannel channel;
+    private final FileLock lock;
+    private int holders;
+
+    private Lease(FileChannel channel, FileLock lock) {
+      this.channel = channel;
+      this.lock = lock;
+    }
+  }
+
+  /**
+   * @param cacheDir Directory that holds the cache entries.
+   * @param maxBytes Upper bound on the total size of the cache.
+   * @throws IOException
+   */
+  public ArchiveCache(Path cacheDir, long maxBytes) throws IOException {
+    this.cacheDir = Files.createDirectories(cacheDir.toAbsolutePath());
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Add the class roots and jars of an archive, unpacking it into the cache on
+   * a miss.
+   *
+   * @param archive    Path to the *.ear or *.war.
+   * @param classRoots Collects the absolute paths of the class roots.
+   * @param jars       Collects the absolute paths of the jars.
+   * @throws IOException
+   */
+  public void unpackArchives(String archive, List<String> classRoots, List<String> jars) throws IOException {
+    Path entry = lookup(digest(new File(archive)), archive, staging -> {
+      List<String> unpackedClassRoots = new ArrayList<>();
+      List<String> unpackedJars = new ArrayList<>();
+      JarUtils.unpackArchives(archive, staging.resolve(UNPACKED), unpackedClassRoots, unpackedJars);
+      List<String> lines = new ArrayList<>();
+      for (String classRoot : unpackedClassRoots) {
+        lines.add(CLASS_ROOT + "\t" + staging.relativize(new File(classRoot).toPath()));
+      }
+      for (String jar : unpackedJars) {
+        lines.add(JAR + "\t" + staging.relativize(new File(jar).toPath()));
+      }
+      return lines;
+    });
+    for (String line : Files.readAllLines(entry.resolve(LAYOUT), StandardCharsets.UTF_8)) {
+      String[] kindAndPath = line.split("\t", 2);
+      String path = entry.resolve(kindAndPath[1]).toString();
+      if (CLASS_ROOT.equals(kindAndPath[0])) {
+        classRoots.add(path);
+      } else if (JAR.equals(kindAndPath[0])) {
+        jars.add(path);
+      }
+    }
+  }
+
+  private interface Populator {
+    /**
+     * Fill the staging directory of a new entry.
+     *
+     * @return List<String> : The lines of the entry's layout file.
+     */
+    List<String> populate(Path staging) throws IOException;
+  }
+
+  /**
+   * Release the entries this cache handed out. Call it once the analysis no
+   * longer reads class files from them.
+   */
+  @Override
+  public void close() throws IOException {
+    synchronized (LEASES) {
+      for (Path entry : leased) {
+        Lease lease = LEASES.get(entry);
+        if (--lease.holders == 0) {
+          LEASES.remove(entry);
+          lease.lock.release();
+          lease.channel.close();
+        }
+      }
+      leased.clear();
+    }
+  }
+
+  /** Find the entry for a key, populating it on a miss, and mark it as used. */
+  private Path lookup(String key, String description, Populator populator) throws IOException {
+    Path entry = cacheDir.resolve(key);
+    lease(entry);
+    Path layout = entry.resolve(LAYOUT);
+    if (Files.isRegularFile(layout)) {
+      Log.info("↪ Using cached " + description + " from " + entry + ".");
+      Files.setLastModifiedTime(layout, FileTime.fromMillis(System.currentTimeMillis()));
+    } else {
+      Log.info("↪ Caching " + description + " in " + entry + ".");
+      populate(entry, populator);
+      evict();
+    }
+    return entry;
+  }
+
+  /** Keep the entry from being evicted until this cache is closed. */
+  private void lease(Path entry) throws IOException {
+    synchronized (LEASES) {
+      if (leased.contains(entry)) {
+        return;
+      }
+      Lease lease = LEASES.get(entry);
+      while (lease == null) {
+        FileChannel channel = FileChannel.open(lockFile(entry), StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+          FileLock lock = channel.lock(0, Long.MAX_VALUE, true);
+          // An evicting process marks the lock file before deleting it, so a
+          // marked file is stale and a fresh one has to be locked instead.
+          if (channel.size() > 0) {
+            channel.close();
+            continue;
+          }
+          lease = new Lease(channel, lock);
+        } catch (IOException | RuntimeException e) {
+          channel.close();
+          throw e;
+        }
+        LEASES.put(entry, lease);
+      }
+      lease.holders++;
+      leased.add(entry);
+    }
+  }
+
+  private Path lockFile(Path entry) {
+    return cacheDir.resolve(entry.getFileName() + LOCK);
+  }
+
+  /**
+   * Populate a private staging directory and move it into place, so that a
+   * concurrent run never sees a half written entry.
+   */
+  private void populate(Path entry, Populator populator) throws IOException {
+    Path staging = cacheDir.resolve(entry.getFileName() + ".tmp-" + UUID.randomUUID());
+    try {
+      Files.createDirectories(staging);
+      List<String> lines = populator.populate(staging);
+      Files.write(staging.resolve(LAYOUT), lines, StandardCharsets.UTF_8);
+      clearPartial(entry);
+      try {
+        Files.move(staging, entry, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(staging, entry);
+      }
+    } catch (FileAlreadyExistsException e) {
+      Log.debug("Another run already cached " + entry + ".");
+    } catch (IOException e) {
+      if (!Files.isRegularFile(entry.resolve(LAYOUT))) {
+        throw e;
+      }
+    } finally {
+      FileUtils.deleteQuietly(staging.toFile());
+    }
+  }
+
+  /**
+   * Move aside an entry that has no layout file, left behind by a run that
+   * crashed while it cached or evicted the entry, so that it can be replaced.
+   */
+  private void clearPartial(Path entry) throws IOException {
+    if (!Files.isDirectory(entry) || Files.isRegularFile(entry.resolve(LAYOUT))) {
+      return;
+    }
+    Log.info("↪ Clearing partial cache entry " + entry + ".");
+    Path partial = cacheDir.resolve(entry.getFileName() + ".tmp-" + UUID.randomUUID());
+    try {
+      Files.move(entry, partial, StandardCopyOption.ATOMIC_MOVE);
+    } catch (NoSuchFileException e) {
+      // Already cleared by another run.
+      return;
+    }
+    FileUtils.deleteQuietly(partial.toFile());
+  }
+
+  /**
+   * Delete least recently used entries until the cache fits its size bound,
+   * skipping the entries that are leased in this JVM or any other process.
+   */
+  private void evict() {
+    File[] entries = cacheDir.toFile().listFiles(f -> !f.getName().contains(".tmp-") && new File(f, LAYOUT).isFile());
+    if (entries == null) {
+      return;
+    }
+    Arrays.sort(entries, Comparator.comparingLong(f -> new File(f, LAYOUT).lastModified()));
+    long[] sizes = new long[entries.length];
+    long total = 0;
+    for (int i = 0; i < entries.length; i++) {
+      sizes[i] = FileUtils.sizeOfDirectory(entries[i]);
+      total += sizes[i];
+    }
+    for (int i = 0; i < entries.length && total > maxBytes; i++) {
+      if (delete(entries[i].toPath())) {
+        total -= sizes[i];
+      }
+    }
+  }
+
+  /** Delete an entry unless it is leased. */
+  private boolean delete(Path entry) {
+    synchronized (LEASES) {
+      if (LEASES.containsKey(entry)) {
+        return false;
+      }
+      try (FileChannel channel = FileChannel.open(lockFile(entry), StandardOpenOption.CREATE,
+          StandardOpenOption.READ, StandardOpenOption.WRITE);
+          FileLock lock = channel.tryLock()) {
+        if (lock == null) {
+          return false;
+        }
+        Log.info("↪ Evicting " + entry + " from the archive cache.");
+        // Drop the layout first so that a run that finds the entry afterwards
+        // treats it as a miss.
+        if (!entry.resolve(LAYOUT).toFile().delete()) {
+          return false;
+        }
+        FileUtils.deleteQuietly(entry.toFile());
+        // Mark the lock file as stale before deleting it, for runs that opened
+        // it before it was deleted and are waiting to lock it.
+        channel.write(ByteBuffer.wrap(new byte[] { 1 }), 0);
+        try {
+          Files.delete(lockFile(entry));
+        } catch (IOException e) {
+          // Platforms that cannot delete an open file keep it, unmarked.
+          channel.truncate(0);
+        }
+        return true;
+      } catch (IOException | OverlappingFileLockException e) {
+        Log.debug("Cannot evict " + entry + ": " + e);
+        return false;
+      }
+    }
+  }
+
+  private static String digest(File file) throws IOException {
+    MessageDigest md = sha256();
+    try (InputStream in = Files.newInputStream(file.toPath())) {
+      byte[] buffer = new byte[1 << 16];
+      int n;
+      while ((n = in.read(buffer)) > 0) {
+        md.update(buffer, 0, n);
+      }
+    }
+    return hex(md.digest());
+  }
+
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String hex(byte[] bytes) {
+    StringBuilder hex = new StringBuilder();
+    for (byte b : bytes) {
+      hex.append(String.format("%02x", b));
+    }
+    return hex.toString();
+  }
+}
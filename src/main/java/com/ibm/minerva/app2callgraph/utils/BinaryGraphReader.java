@@ -0,0 +1,190 @@
+/*
+Copyright IBM Corporation 2023
+
+Licensed under the Apache Public License 2.0, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ibm.minerva.app2callgraph.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a graph written by {@link BinaryGraphWriter} by memory-mapping the
+ * file. Opening only validates the header and checks that every section lies
+ * within the file; nodes, names and edges are read from the mapped file on
+ * access, without copying. The edges of node v are the
+ * indices from {@link #getEdgeStart(int) getEdgeStart(v)} (inclusive) to
+ * {@link #getEdgeEnd(int) getEdgeEnd(v)} (exclusive):
+ *
+ * <pre>
+ * for (int e = graph.getEdgeStart(v); e &lt; graph.getEdgeEnd(v); e++) {
+ *   visit(graph.getTarget(e), graph.getWeight(e));
+ * }
+ * </pre>
+ *
+ * Instances are safe to share between threads. Files are limited to 2 GB.
+ */
+public class BinaryGraphReader {
+
+  private final ByteBuffer buffer;
+  private final int numNodes;
+  private final int numEdges;
+  private final boolean complete;
+  private final int incompleteReason;
+  private final int stringOffsets;
+  private final int stringBytes;
+  private final int nodes;
+  private final int edgeOffsets;
+  private final int edgeTargets;
+  private final int edgeWeights;
+
+  private BinaryGraphReader(ByteBuffer buffer) throws IOException {
+    this.buffer = buffer;
+    int sections = 4 * BinaryGraphWriter.HEADER_INTS;
+    int headerBytes = sections + 8 * BinaryGraphWriter.SECTIONS;
+    if (buffer.capacity() < headerBytes || buffer.getInt(0) != BinaryGraphWriter.MAGIC) {
+      throw new IOException("Not a binary call graph");
+    }
+    if (buffer.getInt(4) != BinaryGraphWriter.VERSION) {
+      throw new IOException("Unsupported binary call graph version " + buffer.getInt(4));
+    }
+    complete = (buffer.getInt(8) & 1) != 0;
+    numNodes = buffer.getInt(12);
+    numEdges = buffer.getInt(16);
+    int numStrings = buffer.getInt(20);
+    incompleteReason = buffer.getInt(24);
+    if (numNodes < 0 || numEdges < 0 || numStrings < numNodes || incompleteReason < -1
+        || incompleteReason >= numStrings) {
+      throw new IOException("Corrupt binary call graph header");
+    }
+    // Every section must lie within the file, so that no accessor reads past it.
+    stringOffsets = section(buffer, sections, headerBytes, 4L * (numStrings + 1L), "string offsets");
+    stringBytes = section(buffer, sections + 8, headerBytes, buffer.getInt(stringOffsets + 4 * numStrings),
+        "string bytes");
+    nodes = section(buffer, sections + 16, headerBytes, 4L * BinaryGraphWriter.NODE_INTS * numNodes, "nodes");
+    edgeOffsets = section(buffer, sections + 24, headerBytes, 4L * (numNodes + 1L), "edge offsets");
+    edgeTargets = section(buffer, sections + 32, headerBytes, 4L * numEdges, "edge targets");
+    edgeWeights = section(buffer, sections + 40, headerBytes, 8L * numEdges, "edge weights");
+  }
+
+  /**
+   * @return int : The offset of a section, read from the section table, after
+   *         checking that the section fits the file.
+   */
+  private static int section(ByteBuffer buffer, int index, int headerBytes, long length, String name)
+      throws IOException {
+    long offset = buffer.getLong(index);
+    if (offset < headerBytes || length < 0 || offset > buffer.capacity() - length) {
+      throw new IOException("Truncated binary call graph: the " + name + " section does not fit the file");
+    }
+    return (int) offset;
+  }
+
+  /**
+   * @param file The file to map.
+   * @return BinaryGraphReader
+   * @throws IOException
+   */
+  public static BinaryGraphReader open(File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException(file + " is larger than 2 GB");
+      }
+      // The mapping stays valid after the channel is closed.
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      return new BinaryGraphReader(buffer);
+    }
+  }
+
+  public int getNumNodes() {
+    return numNodes;
+  }
+
+  public int getNumEdges() {
+    return numEdges;
+  }
+
+  public boolean isComplete() {
+    return complete;
+  }
+
+  /** @return String : Why the graph is incomplete, or null if it is complete. */
+  public String getIncompleteReason() {
+    return incompleteReason < 0 ? null : getString(incompleteReason);
+  }
+
+  /** @return String : The class name of a node, e.g. com.foo.Bar. */
+  public String getClassName(int node) {
+    return getString(nodeInt(node, 0));
+  }
+
+  public boolean isPrivate(int node) {
+    return (nodeInt(node, 1) & 1) != 0;
+  }
+
+  public int getNumFields(int node) {
+    return nodeInt(node, 2);
+  }
+
+  public int getNumStaticFields(int node) {
+    return nodeInt(node, 3);
+  }
+
+  public int getNumInstanceFields(int node) {
+    return nodeInt(node, 4);
+  }
+
+  public int getNumDeclaredMethods(int node) {
+    return nodeInt(node, 5);
+  }
+
+  public int getNumStaticMethods(int node) {
+    return nodeInt(node, 6);
+  }
+
+  /** @return int : The index of the first edge of a node. */
+  public int getEdgeStart(int node) {
+    return buffer.getInt(edgeOffsets + 4 * node);
+  }
+
+  /** @return int : One past the index of the last edge of a node. */
+  public int getEdgeEnd(int node) {
+    return buffer.getInt(edgeOffsets + 4 * (node + 1));
+  }
+
+  /** @return int : The target node of an edge. */
+  public int getTarget(int edge) {
+    return buffer.getInt(edgeTargets + 4 * edge);
+  }
+
+  public double getWeight(int edge) {
+    return buffer.getDouble(edgeWeights + 8 * edge);
+  }
+
+  private int nodeInt(int node, int field) {
+    return buffer.getInt(nodes + 4 * (BinaryGraphWriter.NODE_INTS * node + field));
+  }
+
+  private String getString(int index) {
+    int start = buffer.getInt(stringOffsets + 4 * index);
+    int end = buffer.getInt(stringOffsets + 4 * (index + 1));
+    byte[] bytes = new byte[end - start];
+    ByteBuffer view = buffer.duplicate();
+    view.position(stringBytes + start);
+    view.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
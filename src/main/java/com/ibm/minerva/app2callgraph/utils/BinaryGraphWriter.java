@@ -0,0 +1,158 @@
+/*
+Copyright IBM Corporation 2023
+
+Licensed under the Apache Public License 2.0, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ibm.minerva.app2callgraph.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import com.ibm.minerva.app2callgraph.entities.CallGraphNode;
+import com.ibm.minerva.app2callgraph.entities.ClassGraph;
+
+/**
+ * Writes a {@link ClassGraph} in the binary graph format read by
+ * {@link BinaryGraphReader}. All numbers are big-endian and every section
+ * starts at a multiple of 8 bytes.
+ *
+ * <pre>
+ * header     magic "A2CG", version, flags (bit 0: complete), number of nodes,
+ *            number of edges, number of strings, index of the incomplete reason
+ *            string (-1 if complete), padding: 8 ints
+ * sections   byte offsets of the string offsets, string bytes, nodes, edge
+ *            offsets, edge targets and edge weights: 6 longs
+ * strings    number of strings + 1 int offsets into the UTF-8 string bytes,
+ *            then the string bytes
+ * nodes      per node: name string, flags (bit 0: private), total fields,
+ *            static fields, instance fields, total methods, static methods: 7 ints
+ * edges      number of nodes + 1 int offsets (CSR), then the int target of each
+ *            edge, then the double weight of each edge; the edges of a node are
+ *            in the order the graph holds them
+ * </pre>
+ */
+public class BinaryGraphWriter {
+
+  public static final int MAGIC = 0x41324347;
+  public static final int VERSION = 1;
+
+  static final int HEADER_INTS = 8;
+  static final int SECTIONS = 6;
+  static final int NODE_INTS = 7;
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * @param graph            The graph to write.
+   * @param file             The file to write to.
+   * @param incompleteReason Why the graph is incomplete, or null if it is
+   *                         complete.
+   * @throws IOException
+   */
+  public static void write(ClassGraph graph, File file, String incompleteReason) throws IOException {
+    int numNodes = graph.getNumNodes();
+    int numEdges = graph.getNumEdges();
+
+    byte[][] strings = new byte[numNodes + (incompleteReason != null ? 1 : 0)][];
+    for (int v = 0; v < numNodes; v++) {
+      strings[v] = graph.getNode(v).getClassName().getBytes(StandardCharsets.UTF_8);
+    }
+    if (incompleteReason != null) {
+      strings[numNodes] = incompleteReason.getBytes(StandardCharsets.UTF_8);
+    }
+    int[] stringOffsets = new int[strings.length + 1];
+    for (int i = 0; i < strings.length; i++) {
+      stringOffsets[i + 1] = stringOffsets[i] + strings[i].length;
+    }
+
+    // Sort the edges by source, keeping their order within a source.
+    int[] edgeOffsets = new int[numNodes + 1];
+    for (int e = 0; e < numEdges; e++) {
+      edgeOffsets[graph.getSource(e) + 1]++;
+    }
+    for (int v = 0; v < numNodes; v++) {
+      edgeOffsets[v + 1] += edgeOffsets[v];
+    }
+    int[] next = edgeOffsets.clone();
+    int[] order = new int[numEdges];
+    for (int e = 0; e < numEdges; e++) {
+      order[next[graph.getSource(e)]++] = e;
+    }
+
+    long[] sections = new long[SECTIONS];
+    sections[0] = align(4L * HEADER_INTS + 8L * SECTIONS);
+    sections[1] = sections[0] + 4L * stringOffsets.length;
+    sections[2] = align(sections[1] + stringOffsets[strings.length]);
+    sections[3] = sections[2] + 4L * NODE_INTS * numNodes;
+    sections[4] = sections[3] + 4L * edgeOffsets.length;
+    sections[5] = align(sections[4] + 4L * numEdges);
+
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(Files.newOutputStream(file.toPath()), BUFFER_SIZE))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(incompleteReason == null ? 1 : 0);
+      out.writeInt(numNodes);
+      out.writeInt(numEdges);
+      out.writeInt(strings.length);
+      out.writeInt(incompleteReason == null ? -1 : numNodes);
+      out.writeInt(0);
+      for (long section : sections) {
+        out.writeLong(section);
+      }
+
+      pad(out, sections[0]);
+      for (int offset : stringOffsets) {
+        out.writeInt(offset);
+      }
+      for (byte[] string : strings) {
+        out.write(string);
+      }
+
+      pad(out, sections[2]);
+      for (int v = 0; v < numNodes; v++) {
+        CallGraphNode node = graph.getNode(v);
+        out.writeInt(v);
+        out.writeInt(node.getIsPrivate() ? 1 : 0);
+        out.writeInt(node.getNum_fields());
+        out.writeInt(node.getNum_static_fields());
+        out.writeInt(node.getNum_instance_fields());
+        out.writeInt(node.getNum_declared_methods());
+        out.writeInt(node.getNum_static_methods());
+      }
+      for (int offset : edgeOffsets) {
+        out.writeInt(offset);
+      }
+      for (int e : order) {
+        out.writeInt(graph.getTarget(e));
+      }
+
+      pad(out, sections[5]);
+      for (int e : order) {
+        out.writeDouble(graph.getWeight(e));
+      }
+    }
+  }
+
+  private static long align(long offset) {
+    return (offset + 7) & ~7L;
+  }
+
+  private static void pad(DataOutputStream out, long offset) throws IOException {
+    while (out.size() < offset) {
+      out.writeByte(0);
+    }
+  }
+}
@@ -0,0 +1,241 @@
+/*
+Copyright IBM Corporation 2023
+
+Licensed under the Apache Public License 2.0, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ibm.minerva.app2callgraph.utils;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.ibm.wala.ipa.callgraph.CallGraphBuilder;
+import com.ibm.wala.ipa.callgraph.propagation.PropagationCallGraphBuilder;
+import com.ibm.wala.util.MonitorUtil.IProgressMonitor;
+
+/**
+ * A progress monitor that cancels call graph construction once it has run for
+ * longer than a time budget, or once the live heap (heap occupancy measured
+ * right after the last garbage collection) grows past a heap budget. The live
+ * heap is only checked once the heap has been collected since the last
+ * {@link #restart}, so the garbage of earlier work (e.g. a canceled attempt)
+ * does not count against the next one. The solver
+ * polls {@link #isCanceled()} and stops with a
+ * {@link com.ibm.wala.ipa.callgraph.CallGraphBuilderCancelException} that
+ * carries the partial call graph.
+ *
+ * <p>
+ * While a recording enables it, the monitor also samples the progress of the
+ * solver of the builder it {@link #track}s as a
+ * solver progress event (see {@link AnalysisEvents}) about once a second.
+ */
+public class BudgetMonitor implements IProgressMonitor {
+
+  private static final long CHECK_INTERVAL_MILLIS = 100;
+  private static final long PROGRESS_INTERVAL_MILLIS = 1000;
+
+  private final long timeBudgetMillis;
+  private final long heapBudgetBytes;
+  // Read without the lock by getElapsedMillis.
+  private volatile long start;
+  private long collectionsAtRestart;
+  private long lastCheck;
+  private volatile String cancelMessage;
+  private CallGraphBuilder<?> builder;
+  private String ctxMode;
+  private long lastProgress;
+
+  /**
+   * @param timeBudgetMillis Time budget in milliseconds, or 0 for none.
+   * @param heapBudgetBytes  Live heap budget in bytes, or 0 for none.
+   */
+  public BudgetMonitor(long timeBudgetMillis, long heapBudgetBytes) {
+    this.timeBudgetMillis = timeBudgetMillis;
+    this.heapBudgetBytes = heapBudgetBytes;
+    this.start = System.currentTimeMillis();
+    this.collectionsAtRestart = numCollections();
+  }
+
+  /** Restart the clock of the time budget and stop tracking any builder. */
+  public synchronized void restart() {
+    start = System.currentTimeMillis();
+    collectionsAtRestart = numCollections();
+    cancelMessage = null;
+    builder = null;
+  }
+
+  /**
+   * Sample the solver progress of a builder until the next restart. Only one
+   * builder may use the monitor while it is tracked.
+   *
+   * @param builder The builder about to make a call graph with this monitor.
+   * @param ctxMode Its context mode.
+   */
+  public synchronized void track(CallGraphBuilder<?> builder, String ctxMode) {
+    this.builder = builder;
+    this.ctxMode = ctxMode;
+    this.lastProgress = System.currentTimeMillis();
+  }
+
+  @Override
+  public void beginTask(String task, int totalWork) {
+    Log.debug("Begin " + task + ".");
+  }
+
+  @Override
+  public void subTask(String subTask) {
+  }
+
+  @Override
+  public synchronized boolean isCanceled() {
+    if (cancelMessage != null) {
+      return true;
+    }
+    long now = System.currentTimeMillis();
+    if (now - lastCheck < CHECK_INTERVAL_MILLIS) {
+      return false;
+    }
+    lastCheck = now;
+    if (builder != null && now - lastProgress >= PROGRESS_INTERVAL_MILLIS) {
+      lastProgress = now;
+      recordProgress(now);
+    }
+    if (timeBudgetMillis > 0 && now - start > timeBudgetMillis) {
+      cancel("Time budget of " + timeBudgetMillis / 1000 + " seconds exceeded.");
+    } else if (heapBudgetBytes > 0 && numCollections() > collectionsAtRestart
+        && liveHeapBytes() > heapBudgetBytes) {
+      cancel("Heap budget of " + heapBudgetBytes / (1024 * 1024) + " MB exceeded.");
+    }
+    return cancelMessage != null;
+  }
+
+  @Override
+  public void cancel() {
+    cancel("Canceled.");
+  }
+
+  /**
+   * Cancel the monitored work.
+   *
+   * @param message Why the work was canceled.
+   */
+  public void cancel(String message) {
+    if (cancelMessage == null) {
+      cancelMessage = message;
+      Log.warn(message + " Canceling call graph construction.");
+    }
+  }
+
+  @Override
+  public void done() {
+  }
+
+  @Override
+  public void worked(int units) {
+  }
+
+  @Override
+  public String getCancelMessage() {
+    return cancelMessage;
+  }
+
+  /** @return long : Milliseconds since the clock was (re)started. */
+  public long getElapsedMillis() {
+    return System.currentTimeMillis() - start;
+  }
+
+  private void recordProgress(long now) {
+    if (!AnalysisEvents.isSolverProgressEnabled()) {
+      return;
+    }
+    int callGraphNodes = -1;
+    int worklistSize = -1;
+    if (builder instanceof PropagationCallGraphBuilder) {
+      PropagationCallGraphBuilder propagation = (PropagationCallGraphBuilder) builder;
+      if (propagation.getCallGraph() != null) {
+        callGraphNodes = propagation.getCallGraph().getNumberOfNodes();
+      }
+      worklistSize = worklistSize(propagation.getPropagationSystem());
+    }
+    AnalysisEvents.solverProgress(ctxMode, callGraphNodes, worklistSize, now - start);
+  }
+
+  /**
+   * WALA does not expose the worklist of its solver, so read the workList field
+   * of the fixed point solver reflectively.
+   *
+   * @return int : The number of statements on the worklist, or -1 if it cannot
+   *         be read.
+   */
+  private static int worklistSize(Object solver) {
+    if (solver == null) {
+      return -1;
+    }
+    try {
+      for (Class<?> c = solver.getClass(); c != null; c = c.getSuperclass()) {
+        for (Field field : c.getDeclaredFields()) {
+          if (field.getName().equals("workList")) {
+            field.setAccessible(true);
+            Object workList = field.get(solver);
+            if (workList == null) {
+              return -1;
+            }
+            Method size = workList.getClass().getMethod("size");
+            size.setAccessible(true);
+            return ((Number) size.invoke(workList)).intValue();
+          }
+        }
+      }
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      Log.debug("Cannot read the solver worklist: " + e);
+    }
+    return -1;
+  }
+
+  private static long numCollections() {
+    long collections = 0;
+    for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+      collections += Math.max(0, collector.getCollectionCount());
+    }
+    return collections;
+  }
+
+  /**
+   * @return long : Heap in use after the most recent garbage collection of each
+   *         heap pool. Unlike {@link Runtime#totalMemory()} minus free memory,
+   *         this does not count garbage that has not been collected yet. A pool
+   *         that has not been collected yet reports zero after-collection usage,
+   *         so its current usage is counted instead.
+   */
+  public static long liveHeapBytes() {
+    Set<String> collected = new HashSet<>();
+    for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+      if (collector.getCollectionCount() > 0) {
+        collected.addAll(Arrays.asList(collector.getMemoryPoolNames()));
+      }
+    }
+    long used = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        MemoryUsage usage = collected.contains(pool.getName()) ? pool.getCollectionUsage() : null;
+        used += usage != null ? usage.getUsed() : pool.getUsage().getUsed();
+      }
+    }
+    return used;
+  }
+}
@@ -0,0 +1,67 @@
+/*
+Copyright IBM Corporation 2023
+
+Licensed under the Apache Public License 2.0, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ibm.minerva.app2callgraph.utils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.ibm.minerva.app2callgraph.entities.CallGraphNode;
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IMethod;
+
+/**
+ * Per-run table of the class metrics exported with every graph node. Counting
+ * fields walks the superclass chain, so the metrics of each class are computed
+ * once and shared by every projection and export of the run. The table is safe
+ * to share between threads.
+ */
+public class ClassMetricsTable {
+
+  private final Map<IClass, CallGraphNode> nodes = new ConcurrentHashMap<>();
+
+  /**
+   * @param klass
+   * @return CallGraphNode : The node of the class, with its metrics.
+   */
+  public CallGraphNode get(IClass klass) {
+    CallGraphNode node = nodes.get(klass);
+    return node != null ? node : nodes.computeIfAbsent(klass, ClassMetricsTable::buildCallGraphNode);
+  }
+
+  /** @return int : The number of classes whose metrics have been computed. */
+  public int size() {
+    return nodes.size();
+  }
+
+  /**
+   * @param klass
+   * @return CallGraphNode
+   */
+  private static CallGraphNode buildCallGraphNode(IClass klass) {
+    String className = klass.getName().toString();
+    Boolean isPrivateClass = klass.isPrivate();
+    Integer num_fields = klass.getAllFields().size();
+    Integer num_static_fields = klass.getAllStaticFields().size();
+    Integer num_instance_fields = klass.getAllInstanceFields().size();
+    Integer num_static_methods = 0;
+    for (IMethod method : klass.getDeclaredMethods()) {
+      num_static_methods += method.isStatic() ? 1 : 0;
+    }
+
+    return new CallGraphNode(className, isPrivateClass, num_fields,
+        num_static_fields, num_instance_fields,
+        num_static_methods, num_static_methods);
+
+  }
+}
@@ -0,0 +1,48 @@
+/*
+Copyright IBM Corporation 2023
+
+Licensed under the Apache Public License 2.0, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ibm.minerva.app2callgraph.utils;
+
+import java.io.IOException;
+
+import com.ibm.wala.cast.java.translator.jdt.ecj.ECJClassLoaderFactory;
+import com.ibm.wala.classLoader.IClassLoader;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.cha.IClassHierarchy;
+import com.ibm.wala.types.ClassLoaderReference;
+import com.ibm.wala.util.config.SetOfClasses;
+
+/**
+ * A class loader factory that records a "load" module event (see
+ * {@link AnalysisEvents}) for every class loader it creates. A new class loader
+ * reads and parses the class files of its modules, so the event spans the time
+ * the loader spends on its bytes, including any wait on a read-ahead.
+ */
+public class EventLoaderFactory extends ECJClassLoaderFactory {
+
+  public EventLoaderFactory(SetOfClasses exclusions) {
+    super(exclusions);
+  }
+
+  @Override
+  protected IClassLoader makeNewClassLoader(ClassLoaderReference classLoaderReference, IClassHierarchy cha,
+      IClassLoader parent, AnalysisScope scope) throws IOException {
+    AnalysisEvents.Span event = AnalysisEvents.beginModule("load", classLoaderReference.getName().toString(),
+        String.valueOf(scope.getModules(classLoaderReference)));
+    try {
+      return super.makeNewClassLoader(classLoaderReference, cha, parent, scope);
+    } finally {
+      event.end();
+    }
+  }
+}
@@ -0,0 +1,210 @@
+/*
+Copyright IBM Corporation 2023
+
+Licensed under the Apache Public License 2.0, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ibm.minerva.app2callgraph.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.classLoader.ShrikeCTMethod;
+import com.ibm.wala.ipa.callgraph.Entrypoint;
+import com.ibm.wala.ipa.callgraph.impl.DefaultEntrypoint;
+import com.ibm.wala.ipa.cha.IClassHierarchy;
+import com.ibm.wala.types.annotations.Annotation;
+
+/**
+ * Finds the entry surfaces a Java EE / Jakarta EE container actually invokes:
+ * servlets, filters and listeners, JAX-RS resources and providers, EJB session
+ * and message driven beans, CDI observers and named beans, WebSocket endpoints,
+ * classes mapped in deployment descriptors, and main methods.
+ *
+ * <p>
+ * Annotations and framework types are matched under both the javax and the
+ * jakarta namespace.
+ */
+public class FrameworkEntrypoints {
+
+  private static final String[] NAMESPACES = { "Ljavax/", "Ljakarta/" };
+
+  // Classes whose public methods are all invoked by the container (or by EL).
+  private static final Set<String> BEAN_CLASS_ANNOTATIONS = new HashSet<>(Arrays.asList(
+      "ejb/Stateless", "ejb/Stateful", "ejb/Singleton", "ws/rs/ext/Provider", "servlet/annotation/WebListener",
+      "inject/Named", "faces/bean/ManagedBean", "jws/WebService"));
+
+  private static final Set<String> SERVLET_CLASS_ANNOTATIONS = new HashSet<>(Arrays.asList(
+      "servlet/annotation/WebServlet", "servlet/annotation/WebFilter"));
+
+  private static final Set<String> SERVLET_TYPES = new HashSet<>(Arrays.asList(
+      "servlet/Servlet", "servlet/Filter"));
+
+  private static final Set<String> SERVLET_METHODS = new HashSet<>(Arrays.asList(
+      "service", "doGet", "doPost", "doPut", "doDelete", "doHead", "doOptions", "doTrace", "doFilter", "init",
+      "destroy"));
+
+  private static final Set<String> LISTENER_TYPES = new HashSet<>(Arrays.asList(
+      "servlet/ServletContextListener", "servlet/ServletContextAttributeListener",
+      "servlet/ServletRequestListener", "servlet/ServletRequestAttributeListener",
+      "servlet/http/HttpSessionListener", "servlet/http/HttpSessionAttributeListener",
+      "servlet/http/HttpSessionBindingListener", "servlet/http/HttpSessionActivationListener",
+      "servlet/http/HttpSessionIdListener", "servlet/AsyncListener", "servlet/ReadListener",
+      "servlet/WriteListener"));
+
+  private static final Set<String> MESSAGE_DRIVEN_CLASS_ANNOTATIONS = new HashSet<>(Arrays.asList(
+      "ejb/MessageDriven"));
+
+  private static final Set<String> MESSAGE_LISTENER_TYPES = new HashSet<>(Arrays.asList(
+      "jms/MessageListener"));
+
+  private static final Set<String> WEBSOCKET_CLASS_ANNOTATIONS = new HashSet<>(Arrays.asList(
+      "websocket/server/ServerEndpoint", "websocket/ClientEndpoint"));
+
+  private static final Set<String> WEBSOCKET_TYPES = new HashSet<>(Arrays.asList(
+      "websocket/Endpoint", "websocket/Encoder$Text", "websocket/Encoder$Binary", "websocket/Decoder$Text",
+      "websocket/Decoder$Binary", "websocket/MessageHandler$Whole", "websocket/MessageHandler$Partial"));
+
+  private static final Set<String> JAXRS_APPLICATION_TYPES = new HashSet<>(Arrays.asList(
+      "ws/rs/core/Application"));
+
+  // Methods that are entry points on their own, wherever they are declared.
+  private static final Set<String> METHOD_ANNOTATIONS = new HashSet<>(Arrays.asList(
+      "ws/rs/Path", "ws/rs/GET", "ws/rs/POST", "ws/rs/PUT", "ws/rs/DELETE", "ws/rs/HEAD", "ws/rs/OPTIONS",
+      "ws/rs/PATCH", "websocket/OnOpen", "websocket/OnMessage", "websocket/OnClose", "websocket/OnError",
+      "ejb/Schedule", "ejb/Schedules", "ejb/Timeout", "annotation/PostConstruct", "annotation/PreDestroy",
+      "enterprise/inject/Produces", "jws/WebMethod"));
+
+  private static final Set<String> PARAMETER_ANNOTATIONS = new HashSet<>(Arrays.asList(
+      "enterprise/event/Observes", "enterprise/event/ObservesAsync"));
+
+  /**
+   * Use the framework entry surfaces of all application classes as entry points.
+   *
+   * @param cha               : The class hierarchy object that holds all the
+   *                          classes.
+   * @param descriptorClasses : Classes (e.g. Lcom/foo/MyServlet) mapped in
+   *                          deployment descriptors such as web.xml.
+   * @return Iterable<Entrypoint> : An iterable collection of entry points.
+   */
+  public static Iterable<Entrypoint> getEntryPoints(IClassHierarchy cha, Set<String> descriptorClasses) {
+    Collection<Entrypoint> entrypoints = new ArrayList<>();
+    int entrypointClasses = 0;
+    for (IClass c : cha) {
+      if (!AnalysisUtils.isApplicationClass(c) || c.isInterface()) {
+        continue;
+      }
+      Set<IMethod> methods = getEntryMethods(c, descriptorClasses.contains(c.getName().toString()));
+      for (IMethod method : methods) {
+        entrypoints.add(new DefaultEntrypoint(method, cha));
+      }
+      entrypointClasses += methods.isEmpty() ? 0 : 1;
+    }
+    Log.info("Registered " + entrypoints.size() + " framework entrypoints in " + entrypointClasses
+        + " classes.");
+    return entrypoints;
+  }
+
+  private static Set<IMethod> getEntryMethods(IClass c, boolean inDescriptor) {
+    Set<IMethod> methods = new LinkedHashSet<>();
+    boolean allPublic = hasAnnotation(c.getAnnotations(), BEAN_CLASS_ANNOTATIONS)
+        || hasSupertype(c, LISTENER_TYPES) || hasSupertype(c, JAXRS_APPLICATION_TYPES);
+    boolean servlet = hasAnnotation(c.getAnnotations(), SERVLET_CLASS_ANNOTATIONS) || hasSupertype(c, SERVLET_TYPES);
+    boolean messageDriven = hasAnnotation(c.getAnnotations(), MESSAGE_DRIVEN_CLASS_ANNOTATIONS)
+        || hasSupertype(c, MESSAGE_LISTENER_TYPES);
+    boolean webSocket = hasAnnotation(c.getAnnotations(), WEBSOCKET_CLASS_ANNOTATIONS)
+        || hasSupertype(c, WEBSOCKET_TYPES);
+    // A descriptor mapped class that is none of the above (e.g. an ejb-class of a
+    // legacy session bean) is reachable through all its public methods.
+    allPublic |= inDescriptor && !servlet && !messageDriven && !webSocket;
+
+    for (IMethod method : c.getDeclaredMethods()) {
+      if (method.isAbstract() || method.isClinit()) {
+        continue;
+      }
+      String name = method.getName().toString();
+      if ((allPublic && method.isPublic() && !method.isInit())
+          || (servlet && SERVLET_METHODS.contains(name))
+          || (messageDriven && name.equals("onMessage"))
+          || (webSocket && method.isPublic() && !method.isInit() && !method.isStatic())
+          || hasAnnotation(method.getAnnotations(), METHOD_ANNOTATIONS)
+          || hasParameterAnnotation(method, PARAMETER_ANNOTATIONS)
+          || isMain(method)) {
+        methods.add(method);
+      }
+    }
+    return methods;
+  }
+
+  private static boolean isMain(IMethod method) {
+    return method.isPublic() && method.isStatic() && method.getName().toString().equals("main")
+        && method.getDescriptor().toString().equals("([Ljava/lang/String;)V");
+  }
+
+  private static boolean hasAnnotation(Collection<Annotation> annotations, Set<String> names) {
+    if (annotations == null) {
+      return false;
+    }
+    for (Annotation annotation : annotations) {
+      if (matches(annotation.getType().getName().toString(), names)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean hasParameterAnnotation(IMethod method, Set<String> names) {
+    if (!(method instanceof ShrikeCTMethod)) {
+      return false;
+    }
+    try {
+      Collection<Annotation>[] parameterAnnotations = ((ShrikeCTMethod) method).getParameterAnnotations();
+      if (parameterAnnotations != null) {
+        for (Collection<Annotation> annotations : parameterAnnotations) {
+          if (hasAnnotation(annotations, names)) {
+            return true;
+          }
+        }
+      }
+    } catch (RuntimeException e) {
+      Log.debug("Could not read parameter annotations of " + method.getSignature() + ": " + e);
+    }
+    return false;
+  }
+
+  private static boolean hasSupertype(IClass c, Set<String> names) {
+    for (IClass s = c.getSuperclass(); s != null; s = s.getSuperclass()) {
+      if (matches(s.getName().toString(), names)) {
+        return true;
+      }
+    }
+    for (IClass i : c.getAllImplementedInterfaces()) {
+      if (matches(i.getName().toString(), names)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean matches(String typeName, Set<String> names) {
+    for (String namespace : NAMESPACES) {
+      if (typeName.startsWith(namespace) && names.contains(typeName.substring(namespace.length()))) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
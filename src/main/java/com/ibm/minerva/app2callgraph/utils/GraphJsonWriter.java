@@ -0,0 +1,151 @@
+/*
+Copyright IBM Corporation 2023
+
+Licensed under the Apache Public License 2.0, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ibm.minerva.app2callgraph.utils;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import com.ibm.minerva.app2callgraph.entities.CallGraphNode;
+import com.ibm.minerva.app2callgraph.entities.ClassGraph;
+
+/**
+ * Writes a {@link ClassGraph} in the JSON format of the JGraphT JSON exporter,
+ * byte for byte, without building a JGraphT graph or attribute objects. Nodes
+ * and edges are written one at a time to a buffered stream, so the export
+ * needs no memory beyond the graph itself.
+ */
+public class GraphJsonWriter {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+  /**
+   * @param graph            The graph to write.
+   * @param file             The file to write to.
+   * @param incompleteReason Why the graph is incomplete, or null if it is
+   *                         complete.
+   * @throws IOException
+   */
+  public static void write(ClassGraph graph, File file, String incompleteReason) throws IOException {
+    try (Writer out = new BufferedWriter(
+        new OutputStreamWriter(Files.newOutputStream(file.toPath()), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+      write(graph, out, incompleteReason);
+    }
+  }
+
+  /**
+   * @param graph            The graph to write.
+   * @param out              The writer to write to. It is not closed.
+   * @param incompleteReason Why the graph is incomplete, or null if it is
+   *                         complete.
+   * @throws IOException
+   */
+  public static void write(ClassGraph graph, Writer out, String incompleteReason) throws IOException {
+    out.write("{\"creator\":\"JGraphT JSON Exporter\",\"version\":\"1\"");
+    // A complete graph is written exactly as before graphs could be partial.
+    if (incompleteReason != null) {
+      out.write(",\"complete\":false,\"incomplete_reason\":");
+      writeString(out, incompleteReason);
+    }
+
+    out.write(",\"nodes\":[");
+    for (int v = 0; v < graph.getNumNodes(); v++) {
+      CallGraphNode node = graph.getNode(v);
+      if (v > 0) {
+        out.write(',');
+      }
+      out.write("{\"id\":");
+      writeString(out, node.getClassName());
+      out.write(",\"is_class_private\":");
+      out.write(Boolean.toString(node.getIsPrivate()));
+      out.write(",\"num_total_fields\":");
+      out.write(Integer.toString(node.getNum_fields()));
+      out.write(",\"num_static_fields\":");
+      out.write(Integer.toString(node.getNum_static_fields()));
+      out.write(",\"num_instance_fields\":");
+      out.write(Integer.toString(node.getNum_instance_fields()));
+      out.write(",\"num_total_methods\":");
+      out.write(Integer.toString(node.getNum_declared_methods()));
+      out.write(",\"num_static_methods\":");
+      out.write(Integer.toString(node.getNum_static_methods()));
+      out.write('}');
+    }
+
+    out.write("],\"edges\":[");
+    for (int e = 0; e < graph.getNumEdges(); e++) {
+      if (e > 0) {
+        out.write(',');
+      }
+      out.write("{\"source\":");
+      writeString(out, graph.getNode(graph.getSource(e)).getClassName());
+      out.write(",\"target\":");
+      writeString(out, graph.getNode(graph.getTarget(e)).getClassName());
+      out.write(",\"weight\":");
+      out.write(Double.toString(graph.getWeight(e)));
+      out.write('}');
+    }
+    out.write("]}");
+  }
+
+  /**
+   * Write a quoted string escaped the way the JGraphT exporter escapes it
+   * (commons-text escapeJson): quote, backslash and slash are backslash
+   * escaped, and anything outside printable ASCII becomes a unicode escape.
+   */
+  static void writeString(Writer out, String s) throws IOException {
+    out.write('"');
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      switch (c) {
+      case '"':
+      case '\\':
+      case '/':
+        out.write('\\');
+        out.write(c);
+        break;
+      case '\b':
+        out.write("\\b");
+        break;
+      case '\n':
+        out.write("\\n");
+        break;
+      case '\t':
+        out.write("\\t");
+        break;
+      case '\f':
+        out.write("\\f");
+        break;
+      case '\r':
+        out.write("\\r");
+        break;
+      default:
+        if (c < 32 || c > 0x7f) {
+          out.write("\\u");
+          out.write(HEX[(c >> 12) & 0xf]);
+          out.write(HEX[(c >> 8) & 0xf]);
+          out.write(HEX[(c >> 4) & 0xf]);
+          out.write(HEX[c & 0xf]);
+        } else {
+          out.write(c);
+        }
+      }
+    }
+    out.write('"');
+  }
+}
@@ -15,14 +15,27 @@ package com.ibm.minerva.app2callgraph.utils;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.util.Enumeration;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import com.ibm.wala.classLoader.Module;
 
 public class JarUtils {
   private static final Pattern patternWar = Pattern.compile(".*\\.war");
@@ -32,6 +45,7 @@ public class JarUtils {
   public static void unpackArchives(
       String jarFile, Path workDir, List<String> classRoots, List<String> jars) throws IOException {
 
+    AnalysisEvents.Span event = AnalysisEvents.beginModule("unpack", null, jarFile);
     JarFile jar = new java.util.jar.JarFile(jarFile);
     Enumeration<JarEntry> enumEntries = jar.entries();
 
@@ -65,5 +79,136 @@ public class JarUtils {
       }
     }
     jar.close();
+    event.end();
+  }
+
+  /**
+   * Open an EAR/WAR in place and collect WALA modules for its class roots (any
+   * classes/ directory) and for every jar inside it, recursing into nested
+   * WARs. This discovers the same layout as {@link #unpackArchives} but serves
+   * the class files from the archive, without writing anything to disk. The
+   * archive is held open for as long as the modules are read, the same way a
+   * {@link com.ibm.wala.classLoader.JarFileModule} holds its jar open.
+   *
+   * @param archiveFile Path to the *.ear or *.war.
+   * @param classRoots  Collects one module per class root.
+   * @param jars        Collects one module per nested jar.
+   * @throws IOException
+   */
+  public static void openArchives(String archiveFile, List<Module> classRoots, List<Module> jars)
+      throws IOException {
+    AnalysisEvents.Span event = AnalysisEvents.beginModule("open", null, archiveFile);
+    ZipArchive archive = ZipArchive.open(new File(archiveFile), JarUtils::isClassFile);
+    try {
+      openArchives(archive, classRoots, jars);
+    } catch (IOException | RuntimeException e) {
+      archive.close();
+      throw e;
+    } finally {
+      event.end();
+    }
+  }
+
+  private static void openArchives(ZipArchive archive, List<Module> classRoots, List<Module> jars)
+      throws IOException {
+    Set<String> roots = new LinkedHashSet<>();
+    for (String name : archive.getEntryNames()) {
+      if (name.endsWith(".jar")) {
+        jars.add(new NestedArchiveModule(archive.nested(name), ""));
+      } else if (name.endsWith(".war")) {
+        openArchives(archive.nested(name), classRoots, jars);
+      } else if (name.endsWith(".class")) {
+        String root = classRootOf(name);
+        if (root != null) {
+          roots.add(root);
+        }
+      }
+    }
+    for (String root : roots) {
+      classRoots.add(new NestedArchiveModule(archive, root));
+    }
+  }
+
+  private static String classRootOf(String entryName) {
+    if (entryName.startsWith("classes/")) {
+      return "classes/";
+    }
+    int idx = entryName.indexOf("/classes/");
+    return idx < 0 ? null : entryName.substring(0, idx + "/classes/".length());
+  }
+
+  /**
+   * Find the classes that deployment descriptors (web.xml, web-fragment.xml,
+   * ejb-jar.xml) map as servlets, filters, listeners or enterprise beans.
+   *
+   * @param inputs Input paths separated by ':' (directories, jars, wars, ears).
+   * @return Set<String> : Class names in bytecode form (e.g. Lcom/foo/MyServlet).
+   * @throws IOException
+   */
+  public static Set<String> findDescriptorClasses(String inputs) throws IOException {
+    Set<String> classes = new LinkedHashSet<>();
+    for (String input : inputs.split(":")) {
+      File file = new File(input);
+      if (file.isDirectory()) {
+        try (Stream<Path> paths = Files.walk(file.toPath())) {
+          for (Path path : (Iterable<Path>) paths::iterator) {
+            if (isDescriptor(path.toString())) {
+              try (InputStream in = Files.newInputStream(path)) {
+                readDescriptor(path.toString(), in, classes);
+              }
+            }
+          }
+        }
+      } else if (file.isFile()) {
+        try (ZipArchive archive = ZipArchive.open(file, JarUtils::isDescriptor)) {
+          findDescriptorClasses(archive, classes);
+        }
+      }
+    }
+    return classes;
+  }
+
+  private static void findDescriptorClasses(ZipArchive archive, Set<String> classes) throws IOException {
+    for (String name : archive.getEntryNames()) {
+      if (isDescriptor(name)) {
+        try (InputStream in = archive.getInputStream(name)) {
+          readDescriptor(archive.getPath() + "!/" + name, in, classes);
+        }
+      } else if (name.endsWith(".war") || name.endsWith(".jar")) {
+        findDescriptorClasses(archive.nested(name), classes);
+      }
+    }
+  }
+
+  private static boolean isClassFile(String name) {
+    return name.endsWith(".class");
+  }
+
+  /** @return boolean : Whether the file name of an entry or path is that of a descriptor. */
+  private static boolean isDescriptor(String name) {
+    int slash = Math.max(name.lastIndexOf('/'), name.lastIndexOf(File.separatorChar));
+    String fileName = name.substring(slash + 1);
+    return fileName.equals("web.xml") || fileName.equals("web-fragment.xml") || fileName.equals("ejb-jar.xml");
+  }
+
+  private static void readDescriptor(String path, InputStream in, Set<String> classes) {
+    try {
+      DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+      factory.setNamespaceAware(true);
+      factory.setValidating(false);
+      factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+      Document document = factory.newDocumentBuilder().parse(in);
+      for (String tag : new String[] { "servlet-class", "filter-class", "listener-class", "ejb-class" }) {
+        NodeList nodes = document.getElementsByTagNameNS("*", tag);
+        for (int i = 0; i < nodes.getLength(); i++) {
+          String className = nodes.item(i).getTextContent().trim();
+          if (!className.isEmpty()) {
+            classes.add("L" + className.replace('.', '/'));
+          }
+        }
+      }
+    } catch (ParserConfigurationException | SAXException | IOException e) {
+      Log.warn("Could not read deployment descriptor " + path + ": " + e.getMessage());
+    }
   }
 }
@@ -0,0 +1,147 @@
+/*
+Copyright IBM Corporation 2023
+
+Licensed under the Apache Public License 2.0, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ibm.minerva.app2callgraph.utils;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.text.ParseException;
+
+import jdk.jfr.Category;
+import jdk.jfr.Configuration;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The flight recorder events behind {@link AnalysisEvents}. Only loaded when
+ * the JVM has the flight recorder.
+ */
+final class JfrEvents {
+
+  private static final String CATEGORY = "app2callgraph";
+
+  private JfrEvents() {
+  }
+
+  /** A phase of an analysis, as recorded in metrics.json. */
+  @Name("app2callgraph.Phase")
+  @Label("Analysis Phase")
+  @Category(CATEGORY)
+  @StackTrace(false)
+  public static class PhaseEvent extends Event {
+    @Label("Phase")
+    public String phase;
+
+    @Label("Context Mode")
+    public String contextMode;
+  }
+
+  /** A module being unpacked, opened, read or loaded. */
+  @Name("app2callgraph.Module")
+  @Label("Module")
+  @Category(CATEGORY)
+  @StackTrace(false)
+  public static class ModuleEvent extends Event {
+    @Label("Action")
+    @Description("unpack, open, read or load")
+    public String action;
+
+    @Label("Loader")
+    public String loader;
+
+    @Label("Path")
+    public String path;
+  }
+
+  /** A sample of the progress of the call graph solver. */
+  @Name("app2callgraph.SolverProgress")
+  @Label("Solver Progress")
+  @Category(CATEGORY)
+  @StackTrace(false)
+  public static class SolverProgressEvent extends Event {
+    @Label("Context Mode")
+    public String contextMode;
+
+    @Label("Call Graph Nodes")
+    public int callGraphNodes;
+
+    @Label("Worklist Size")
+    @Description("Statements left to evaluate, or -1 if unknown")
+    public int worklistSize;
+
+    @Label("Elapsed")
+    @Timespan(Timespan.MILLISECONDS)
+    public long elapsed;
+  }
+
+  static AnalysisEvents.PhaseSpan beginPhase(String phase) {
+    PhaseEvent event = new PhaseEvent();
+    event.phase = phase;
+    event.begin();
+    return new AnalysisEvents.PhaseSpan() {
+      @Override
+      public void setContextMode(String contextMode) {
+        event.contextMode = contextMode;
+      }
+
+      @Override
+      public void end() {
+        event.commit();
+      }
+    };
+  }
+
+  static AnalysisEvents.Span beginModule(String action, String loader, String path) {
+    ModuleEvent event = new ModuleEvent();
+    event.action = action;
+    event.loader = loader;
+    event.path = path;
+    event.begin();
+    return event::commit;
+  }
+
+  static boolean isSolverProgressEnabled() {
+    return new SolverProgressEvent().isEnabled();
+  }
+
+  static void solverProgress(String contextMode, int callGraphNodes, int worklistSize, long elapsed) {
+    SolverProgressEvent event = new SolverProgressEvent();
+    event.contextMode = contextMode;
+    event.callGraphNodes = callGraphNodes;
+    event.worklistSize = worklistSize;
+    event.elapsed = elapsed;
+    event.commit();
+  }
+
+  static void startRecording(String file) throws IOException {
+    Recording recording;
+    try {
+      recording = new Recording(Configuration.getConfiguration("profile"));
+    } catch (ParseException e) {
+      throw new IOException("Cannot read the JFR profile settings", e);
+    }
+    recording.setName(CATEGORY);
+    recording.enable(PhaseEvent.class);
+    recording.enable(ModuleEvent.class);
+    recording.enable(SolverProgressEvent.class);
+    recording.setToDisk(true);
+    recording.setDestination(Paths.get(file));
+    recording.setDumpOnExit(true);
+    recording.start();
+  }
+}
@@ -0,0 +1,336 @@
+/*
+Copyright IBM Corporation 2023
+
+Licensed under the Apache Public License 2.0, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ibm.minerva.app2callgraph.utils;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Drops the extra libraries the application cannot reach before they go into
+ * the analysis scope.
+ *
+ * <p>
+ * Starting from the class files of the application, the classes named in the
+ * constant pool of each class file (class entries, descriptors, signatures and
+ * string constants that look like class names) are looked up in the libraries,
+ * and the constant pools of the library classes found are followed in turn.
+ * Libraries none of whose classes are reached are left out. Super classes and
+ * interfaces are constant pool entries too, so the kept libraries still hold
+ * the whole hierarchy of every reachable class. The versions of a class in a
+ * multi-release jar (META-INF/versions/N/) all stand for the class, and all of
+ * them are followed. Classes that are only named in configuration files (e.g.
+ * META-INF/services) are not seen, so a library reached only that way is
+ * pruned.
+ */
+public class LibraryPruner {
+
+  private static final String VERSIONS = "META-INF/versions/";
+
+  /** A class file of a library; a multi-release jar may hold several. */
+  private static final class ClassFile {
+    private final String lib;
+    private final String entryName;
+
+    ClassFile(String lib, String entryName) {
+      this.lib = lib;
+      this.entryName = entryName;
+    }
+  }
+
+  /** The libraries to keep and the report of what was pruned. */
+  public static final class Result {
+    private final List<String> keptLibs;
+    private final JSONObject report;
+
+    private Result(List<String> keptLibs, JSONObject report) {
+      this.keptLibs = keptLibs;
+      this.report = report;
+    }
+
+    /** @return List<String> : The libraries that hold reachable classes. */
+    public List<String> getKeptLibs() {
+      return keptLibs;
+    }
+
+    public JSONObject getReport() {
+      return report;
+    }
+
+    /**
+     * @param file Where to save the report.
+     * @throws IOException
+     */
+    public void write(File file) throws IOException {
+      try (FileWriter writer = new FileWriter(file)) {
+        writer.write(report.toString(2));
+      }
+      Log.info("Saving library pruning report to " + file.getAbsolutePath() + ".");
+    }
+  }
+
+  /**
+   * @param inputs Path to the input jar(s), *.ear or *.war, or class
+   *               directories, separated by ':'.
+   * @param libs   Paths of the library jars.
+   * @return Result
+   * @throws IOException
+   */
+  public static Result prune(String inputs, List<String> libs) throws IOException {
+    long start = System.currentTimeMillis();
+    Map<String, List<ClassFile>> index = new HashMap<>();
+    Map<String, Set<String>> classesOf = new LinkedHashMap<>();
+    Map<String, ZipFile> zipFiles = new HashMap<>();
+    try {
+      for (String lib : libs) {
+        File file = new File(lib);
+        if (!file.isFile() || !file.getName().endsWith(".jar")) {
+          continue;
+        }
+        ZipFile zipFile = new ZipFile(file);
+        zipFiles.put(lib, zipFile);
+        Set<String> classes = new HashSet<>();
+        Enumeration<? extends ZipEntry> entries = zipFile.entries();
+        while (entries.hasMoreElements()) {
+          String entryName = entries.nextElement().getName();
+          String className = className(entryName);
+          if (className != null) {
+            classes.add(className);
+            index.computeIfAbsent(className, k -> new ArrayList<>()).add(new ClassFile(lib, entryName));
+          }
+        }
+        classesOf.put(lib, classes);
+      }
+
+      Set<String> reached = new HashSet<>();
+      Deque<String> worklist = new ArrayDeque<>();
+      for (String input : inputs.split(":")) {
+        readApplication(new File(input), index.keySet(), reached, worklist);
+      }
+      while (!worklist.isEmpty()) {
+        String className = worklist.pop();
+        // Every version of the class is followed, since the runtime picks one.
+        for (ClassFile classFile : index.get(className)) {
+          ZipFile zipFile = zipFiles.get(classFile.lib);
+          try (InputStream in = zipFile.getInputStream(zipFile.getEntry(classFile.entryName))) {
+            readReferences(in, index.keySet(), reached, worklist);
+          }
+        }
+      }
+      return report(libs, classesOf, reached, System.currentTimeMillis() - start);
+    } finally {
+      for (ZipFile zipFile : zipFiles.values()) {
+        zipFile.close();
+      }
+    }
+  }
+
+  private static Result report(List<String> libs, Map<String, Set<String>> classesOf, Set<String> reached,
+      long millis) {
+    List<String> kept = new ArrayList<>();
+    JSONArray libReports = new JSONArray();
+    int numClasses = 0;
+    int numReached = 0;
+    for (String lib : libs) {
+      Set<String> classes = classesOf.get(lib);
+      if (classes == null) {
+        // Not a jar we can index; keep it as it is.
+        kept.add(lib);
+        libReports.put(new JSONObject().put("path", lib).put("kept", true).put("indexed", false));
+        continue;
+      }
+      Set<String> packages = new TreeSet<>();
+      int libReached = 0;
+      for (String className : classes) {
+        if (reached.contains(className)) {
+          libReached++;
+          packages.add(className.lastIndexOf('/') < 0 ? "" : className.substring(0, className.lastIndexOf('/')));
+        }
+      }
+      numClasses += classes.size();
+      numReached += libReached;
+      if (libReached > 0) {
+        kept.add(lib);
+      }
+      libReports.put(new JSONObject()
+          .put("path", lib)
+          .put("kept", libReached > 0)
+          .put("classes", classes.size())
+          .put("reachable_classes", libReached)
+          .put("reachable_packages", new JSONArray(packages)));
+    }
+    Log.done("Pruned " + (libs.size() - kept.size()) + " of " + libs.size() + " libraries in " + millis
+        + " milliseconds: " + numReached + " of " + numClasses + " library classes are reachable.");
+    JSONObject report = new JSONObject()
+        .put("libs", libs.size())
+        .put("kept_libs", kept.size())
+        .put("classes", numClasses)
+        .put("reachable_classes", numReached)
+        .put("millis", millis)
+        .put("details", libReports);
+    return new Result(Collections.unmodifiableList(kept), report);
+  }
+
+  private static void readApplication(File file, Set<String> known, Set<String> reached, Deque<String> worklist)
+      throws IOException {
+    if (file.isDirectory()) {
+      try (Stream<Path> paths = Files.walk(file.toPath())) {
+        for (Path path : (Iterable<Path>) paths::iterator) {
+          if (path.toString().endsWith(".class")) {
+            try (InputStream in = Files.newInputStream(path)) {
+              readReferences(in, known, reached, worklist);
+            }
+          }
+        }
+      }
+    } else if (file.isFile()) {
+      try (ZipArchive archive = ZipArchive.open(file, name -> name.endsWith(".class"))) {
+        readApplication(archive, known, reached, worklist);
+      }
+    }
+  }
+
+  private static void readApplication(ZipArchive archive, Set<String> known, Set<String> reached,
+      Deque<String> worklist) throws IOException {
+    for (String name : archive.getEntryNames()) {
+      if (name.endsWith(".class")) {
+        try (InputStream in = archive.getInputStream(name)) {
+          readReferences(in, known, reached, worklist);
+        }
+      } else if (name.endsWith(".war") || name.endsWith(".jar")) {
+        readApplication(archive.nested(name), known, reached, worklist);
+      }
+    }
+  }
+
+  /**
+   * Read the constant pool of a class file and queue the known classes it
+   * names that were not reached before.
+   */
+  private static void readReferences(InputStream in, Set<String> known, Set<String> reached,
+      Deque<String> worklist) throws IOException {
+    DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+    if (data.readInt() != 0xCAFEBABE) {
+      return;
+    }
+    skip(data, 4);
+    int count = data.readUnsignedShort();
+    for (int i = 1; i < count; i++) {
+      int tag = data.readUnsignedByte();
+      switch (tag) {
+      case 1: // Utf8
+        for (String name : classNames(data.readUTF())) {
+          if (known.contains(name) && reached.add(name)) {
+            worklist.push(name);
+          }
+        }
+        break;
+      case 7: // Class
+      case 8: // String
+      case 16: // MethodType
+      case 19: // Module
+      case 20: // Package
+        skip(data, 2);
+        break;
+      case 15: // MethodHandle
+        skip(data, 3);
+        break;
+      case 3: // Integer
+      case 4: // Float
+      case 9: // Fieldref
+      case 10: // Methodref
+      case 11: // InterfaceMethodref
+      case 12: // NameAndType
+      case 17: // Dynamic
+      case 18: // InvokeDynamic
+        skip(data, 4);
+        break;
+      case 5: // Long
+      case 6: // Double
+        skip(data, 8);
+        i++;
+        break;
+      default:
+        throw new IOException("Unknown constant pool tag " + tag + ".");
+      }
+    }
+  }
+
+  /**
+   * @param utf8 A Utf8 constant.
+   * @return List<String> : The internal names it may stand for: itself, its
+   *         dotted form turned into an internal name, and every Lname; (or
+   *         Lname&lt;) of a descriptor or signature.
+   */
+  private static List<String> classNames(String utf8) {
+    List<String> names = new ArrayList<>();
+    names.add(utf8);
+    if (utf8.indexOf('.') > 0) {
+      names.add(utf8.replace('.', '/'));
+    }
+    for (int start = utf8.indexOf('L'); start >= 0; start = utf8.indexOf('L', start + 1)) {
+      int end = start + 1;
+      while (end < utf8.length() && utf8.charAt(end) != ';' && utf8.charAt(end) != '<') {
+        end++;
+      }
+      if (end < utf8.length() && end > start + 1) {
+        names.add(utf8.substring(start + 1, end));
+      }
+    }
+    return names;
+  }
+
+  /** @return String : The internal name of a class file entry, or null. */
+  private static String className(String entryName) {
+    if (!entryName.endsWith(".class") || entryName.endsWith("module-info.class")) {
+      return null;
+    }
+    String name = entryName.substring(0, entryName.length() - ".class".length());
+    if (name.startsWith(VERSIONS)) {
+      int slash = name.indexOf('/', VERSIONS.length());
+      return slash < 0 ? null : name.substring(slash + 1);
+    }
+    return name;
+  }
+
+  private static void skip(DataInputStream data, int bytes) throws IOException {
+    if (data.skipBytes(bytes) != bytes) {
+      throw new EOFException();
+    }
+  }
+}
@@ -25,7 +25,8 @@ public class Log {
   public static final String ANSI_PURPLE = "\u001B[35m";
   public static final String ANSI_CYAN = "\u001B[36m";
   public static final String ANSI_WHITE = "\u001B[37m";
-  private static boolean verbose = true;
+  // Set once by the command line and read by every analysis thread.
+  private static volatile boolean verbose = true;
 
   /**
    * Set verbose setting to on or off.
@@ -0,0 +1,208 @@
+/*
+Copyright IBM Corporation 2023
+
+Licensed under the Apache Public License 2.0, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ibm.minerva.app2callgraph.utils;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.ibm.wala.classLoader.CallSiteReference;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.core.util.strings.Atom;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.types.TypeName;
+import com.ibm.wala.util.intset.IntIterator;
+
+/**
+ * Writes the method-level call graph: one node per call graph node and one
+ * edge per caller/callee pair, weighted by the number of call sites of the
+ * caller that may dispatch to the callee.
+ *
+ * <p>
+ * Class names, method names and descriptors are interned into a string table,
+ * nodes are [class, name, descriptor, application] tuples of string indices
+ * (application is 1 for methods of application classes), and edges are a flat
+ * array of [source, target, call sites] int triples. A node's index is its call
+ * graph node number; unused numbers hold null.
+ *
+ * <pre>
+ * {"creator":"app2callgraph","version":"1","level":"method","complete":true,
+ *  "nodes":[[0,1,2,1],...],"edges":[0,5,2,...],"strings":["com.foo.Bar","run","()V",...]}
+ * </pre>
+ *
+ * Nodes and edges are written as they are read from the call graph; only the
+ * string table is held in memory.
+ */
+public class MethodGraphWriter {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final Map<String, Integer> stringIds = new HashMap<>();
+  private final List<String> strings = new ArrayList<>();
+
+  private MethodGraphWriter() {
+  }
+
+  /**
+   * @param callGraph        The call graph to write.
+   * @param file             The file to write to.
+   * @param incompleteReason Why the call graph is incomplete, or null if it is
+   *                         complete.
+   * @return int : The number of edges written.
+   * @throws IOException
+   */
+  public static int write(CallGraph callGraph, File file, String incompleteReason) throws IOException {
+    try (Writer out = new BufferedWriter(
+        new OutputStreamWriter(Files.newOutputStream(file.toPath()), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+      return new MethodGraphWriter().write(callGraph, out, incompleteReason);
+    }
+  }
+
+  private int write(CallGraph callGraph, Writer out, String incompleteReason) throws IOException {
+    out.write("{\"creator\":\"app2callgraph\",\"version\":\"1\",\"level\":\"method\",\"complete\":");
+    out.write(Boolean.toString(incompleteReason == null));
+    if (incompleteReason != null) {
+      out.write(",\"incomplete_reason\":");
+      GraphJsonWriter.writeString(out, incompleteReason);
+    }
+
+    out.write(",\"nodes\":[");
+    int maxNumber = callGraph.getMaxNumber();
+    for (int n = 0; n <= maxNumber; n++) {
+      if (n > 0) {
+        out.write(',');
+      }
+      CGNode node = callGraph.getNode(n);
+      if (node == null) {
+        out.write("null");
+        continue;
+      }
+      IMethod method = node.getMethod();
+      out.write('[');
+      out.write(Integer.toString(intern(javaName(method.getDeclaringClass().getName()))));
+      out.write(',');
+      out.write(Integer.toString(intern(method.getName().toString())));
+      out.write(',');
+      out.write(Integer.toString(intern(method.getDescriptor().toString())));
+      out.write(',');
+      out.write(AnalysisUtils.isApplicationClass(method.getDeclaringClass()) ? '1' : '0');
+      out.write(']');
+    }
+
+    out.write("],\"edges\":[");
+    int numEdges = 0;
+    // Call sites of the current node per callee number, counted in one pass
+    // over the node's call sites and cleared as the edges are written.
+    int[] callSites = new int[maxNumber + 1];
+    for (int n = 0; n <= maxNumber; n++) {
+      CGNode node = callGraph.getNode(n);
+      if (node == null) {
+        continue;
+      }
+      for (Iterator<CallSiteReference> sites = node.iterateCallSites(); sites.hasNext();) {
+        for (CGNode target : callGraph.getPossibleTargets(node, sites.next())) {
+          callSites[callGraph.getNumber(target)]++;
+        }
+      }
+      for (IntIterator succs = callGraph.getSuccNodeNumbers(node).intIterator(); succs.hasNext();) {
+        int succ = succs.next();
+        if (numEdges++ > 0) {
+          out.write(',');
+        }
+        out.write(Integer.toString(n));
+        out.write(',');
+        out.write(Integer.toString(succ));
+        out.write(',');
+        out.write(Integer.toString(callSites[succ]));
+        callSites[succ] = 0;
+      }
+    }
+
+    out.write("],\"strings\":[");
+    for (int i = 0; i < strings.size(); i++) {
+      if (i > 0) {
+        out.write(',');
+      }
+      GraphJsonWriter.writeString(out, strings.get(i));
+    }
+    out.write("]}");
+    return numEdges;
+  }
+
+  /**
+   * @return String : The Java name of a class, e.g. com.foo.Bar, or
+   *         java.lang.String[] and int[][] for array classes.
+   */
+  static String javaName(TypeName name) {
+    TypeName element = name.getInnermostElementType();
+    StringBuilder javaName = new StringBuilder();
+    if (element.isPrimitiveType()) {
+      javaName.append(primitiveName(element.toString().charAt(0)));
+    } else {
+      Atom pkg = element.getPackage();
+      if (pkg != null) {
+        javaName.append(pkg.toString().replace('/', '.')).append('.');
+      }
+      javaName.append(element.getClassName().toString());
+    }
+    String descriptor = name.toString();
+    for (int i = 0; i < descriptor.length() && descriptor.charAt(i) == '['; i++) {
+      javaName.append("[]");
+    }
+    return javaName.toString();
+  }
+
+  private static String primitiveName(char code) {
+    switch (code) {
+    case 'Z':
+      return "boolean";
+    case 'B':
+      return "byte";
+    case 'C':
+      return "char";
+    case 'S':
+      return "short";
+    case 'I':
+      return "int";
+    case 'J':
+      return "long";
+    case 'F':
+      return "float";
+    case 'D':
+      return "double";
+    default:
+      return "void";
+    }
+  }
+
+  private int intern(String s) {
+    Integer id = stringIds.get(s);
+    if (id == null) {
+      id = strings.size();
+      strings.add(s);
+      stringIds.put(s, id);
+    }
+    return id;
+  }
+}
@@ -0,0 +1,129 @@
+/*
+Copyright IBM Corporation 2023
+
+Licensed under the Apache Public License 2.0, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ibm.minerva.app2callgraph.utils;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Iterator;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+import com.ibm.minerva.app2callgraph.entities.CallGraphNode;
+import com.ibm.minerva.app2callgraph.entities.ClassGraph;
+import com.ibm.wala.classLoader.CallSiteReference;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.util.intset.IntIterator;
+
+/**
+ * Writes graphs as the nodes.csv and relationships.csv files of a Neo4j bulk
+ * import, with typed headers, so that a directory can be loaded with
+ *
+ * <pre>
+ * neo4j-admin database import full --nodes=dir/nodes.csv --relationships=dir/relationships.csv
+ * </pre>
+ *
+ * Classes are :Class nodes identified by their name; methods are :Method nodes
+ * identified by their call graph node number. Calls are :CALLS relationships.
+ */
+public class Neo4jCsvWriter {
+
+  public static final String NODES_FILE = "nodes.csv";
+  public static final String RELATIONSHIPS_FILE = "relationships.csv";
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final CSVFormat FORMAT = CSVFormat.DEFAULT.withRecordSeparator('\n');
+
+  /**
+   * Write a class-level graph.
+   *
+   * @param graph The graph to write.
+   * @param dir   The directory to write nodes.csv and relationships.csv to.
+   * @throws IOException
+   */
+  public static void write(ClassGraph graph, File dir) throws IOException {
+    try (CSVPrinter nodes = open(dir, NODES_FILE, "id:ID", ":LABEL", "is_class_private:boolean",
+        "num_total_fields:int", "num_static_fields:int", "num_instance_fields:int", "num_total_methods:int",
+        "num_static_methods:int");
+        CSVPrinter relationships = open(dir, RELATIONSHIPS_FILE, ":START_ID", ":END_ID", ":TYPE",
+            "weight:double")) {
+      for (int v = 0; v < graph.getNumNodes(); v++) {
+        CallGraphNode node = graph.getNode(v);
+        nodes.printRecord(node.getClassName(), "Class", node.getIsPrivate(), node.getNum_fields(),
+            node.getNum_static_fields(), node.getNum_instance_fields(), node.getNum_declared_methods(),
+            node.getNum_static_methods());
+      }
+      for (int e = 0; e < graph.getNumEdges(); e++) {
+        relationships.printRecord(graph.getNode(graph.getSource(e)).getClassName(),
+            graph.getNode(graph.getTarget(e)).getClassName(), "CALLS", graph.getWeight(e));
+      }
+    }
+  }
+
+  /**
+   * Write the method-level graph in one pass over the call graph: each node is
+   * written together with its outgoing edges.
+   *
+   * @param callGraph The call graph to write.
+   * @param dir       The directory to write nodes.csv and relationships.csv to.
+   * @return int : The number of relationships written.
+   * @throws IOException
+   */
+  public static int write(CallGraph callGraph, File dir) throws IOException {
+    int numEdges = 0;
+    try (CSVPrinter nodes = open(dir, NODES_FILE, "id:ID", ":LABEL", "class", "name", "descriptor",
+        "application:boolean");
+        CSVPrinter relationships = open(dir, RELATIONSHIPS_FILE, ":START_ID", ":END_ID", ":TYPE",
+            "call_sites:int")) {
+      int maxNumber = callGraph.getMaxNumber();
+      // Call sites of the current node per callee number, counted in one pass
+      // over the node's call sites and cleared as the edges are written.
+      int[] callSites = new int[maxNumber + 1];
+      for (int n = 0; n <= maxNumber; n++) {
+        CGNode node = callGraph.getNode(n);
+        if (node == null) {
+          continue;
+        }
+        IMethod method = node.getMethod();
+        nodes.printRecord(n, "Method", MethodGraphWriter.javaName(method.getDeclaringClass().getName()),
+            method.getName(), method.getDescriptor(), AnalysisUtils.isApplicationClass(method.getDeclaringClass()));
+        for (Iterator<CallSiteReference> sites = node.iterateCallSites(); sites.hasNext();) {
+          for (CGNode target : callGraph.getPossibleTargets(node, sites.next())) {
+            callSites[callGraph.getNumber(target)]++;
+          }
+        }
+        for (IntIterator succs = callGraph.getSuccNodeNumbers(node).intIterator(); succs.hasNext();) {
+          int succ = succs.next();
+          relationships.printRecord(n, succ, "CALLS", callSites[succ]);
+          callSites[succ] = 0;
+          numEdges++;
+        }
+      }
+    }
+    return numEdges;
+  }
+
+  private static CSVPrinter open(File dir, String name, String... header) throws IOException {
+    Files.createDirectories(dir.toPath());
+    return new CSVPrinter(new BufferedWriter(new OutputStreamWriter(
+        Files.newOutputStream(new File(dir, name).toPath()), StandardCharsets.UTF_8), BUFFER_SIZE),
+        FORMAT.withHeader(header));
+  }
+}
@@ -0,0 +1,138 @@
+/*
+Copyright IBM Corporation 2023
+
+Licensed under the Apache Public License 2.0, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ibm.minerva.app2callgraph.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import com.ibm.wala.classLoader.Module;
+import com.ibm.wala.classLoader.ModuleEntry;
+
+/**
+ * A WALA module that serves the class files of a {@link ZipArchive} directly
+ * from its entries. With a prefix (e.g. WEB-INF/classes/) only the entries below
+ * the prefix are served and the prefix is stripped from the class names, the
+ * same way {@link com.ibm.wala.classLoader.BinaryDirectoryTreeModule} treats an
+ * extracted class root.
+ */
+public class NestedArchiveModule implements Module {
+
+  private final ZipArchive archive;
+  private final String prefix;
+  private List<Entry> entries;
+
+  /**
+   * @param archive The archive to read class files from. A nested archive is
+   *                only read once the entries of the module are listed.
+   * @param prefix  The class root inside the archive ("" for the archive root).
+   */
+  public NestedArchiveModule(ZipArchive archive, String prefix) {
+    this.archive = archive;
+    this.prefix = prefix;
+  }
+
+  @Override
+  public synchronized Iterator<? extends ModuleEntry> getEntries() {
+    if (entries == null) {
+      List<Entry> classFiles = new ArrayList<>();
+      try {
+        for (String name : archive.getEntryNames()) {
+          if (name.startsWith(prefix) && name.endsWith(".class")) {
+            classFiles.add(new Entry(name));
+          }
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      entries = classFiles;
+    }
+    return entries.iterator();
+  }
+
+  /** @return ZipArchive : The archive backing this module. */
+  public ZipArchive getArchive() {
+    return archive;
+  }
+
+  /** @return String : The class root inside the archive. */
+  public String getPrefix() {
+    return prefix;
+  }
+
+  @Override
+  public String toString() {
+    return "NestedArchiveModule:" + archive.getPath() + (prefix.isEmpty() ? "" : "!/" + prefix);
+  }
+
+  private class Entry implements ModuleEntry {
+    private final String name;
+
+    Entry(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public String getName() {
+      return name;
+    }
+
+    @Override
+    public boolean isClassFile() {
+      return true;
+    }
+
+    @Override
+    public boolean isSourceFile() {
+      return false;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+      try {
+        return archive.getInputStream(name);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    @Override
+    public boolean isModuleFile() {
+      return false;
+    }
+
+    @Override
+    public Module asModule() {
+      throw new UnsupportedOperationException(name + " is not a module");
+    }
+
+    @Override
+    public String getClassName() {
+      return name.substring(prefix.length(), name.length() - ".class".length());
+    }
+
+    @Override
+    public Module getContainer() {
+      return NestedArchiveModule.this;
+    }
+
+    @Override
+    public String toString() {
+      return archive.getPath() + "!/" + name;
+    }
+  }
+}
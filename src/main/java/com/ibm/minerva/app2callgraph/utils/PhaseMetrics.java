@@ -0,0 +1,234 @@
+/*
+Copyright IBM Corporation 2023
+
+Licensed under the Apache Public License 2.0, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ibm.minerva.app2callgraph.utils;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+/**
+ * Wall time, CPU time, allocation, peak heap and counts of the phases of one
+ * analysis, saved as metrics.json.
+ *
+ * <p>
+ * CPU time and allocated bytes are those of the thread that runs the
+ * analysis. A phase that also runs worker threads records their number as
+ * "threads" and is marked "thread_local", since its CPU time and allocated
+ * bytes leave the workers out; process CPU time covers them (and anything else
+ * the JVM runs at the same time). Values the JVM cannot measure are -1. The
+ * peak heap of a phase is the largest heap occupancy seen at its start, at its
+ * end and right before every garbage collection in between, which garbage
+ * collection notifications report. Like process CPU time, it is shared with
+ * concurrent analyses.
+ *
+ * <p>
+ * Every phase is also a phase event of the flight recorder, see
+ * {@link AnalysisEvents}.
+ */
+public class PhaseMetrics implements AutoCloseable {
+
+  private final List<JSONObject> phases = new ArrayList<>();
+  private final Set<String> heapPools = new HashSet<>();
+  private final List<NotificationEmitter> emitters = new ArrayList<>();
+  private final AtomicLong peakHeap = new AtomicLong();
+  private final NotificationListener listener = this::handleNotification;
+  private final long start = System.currentTimeMillis();
+  private long overallPeakHeap;
+
+  public PhaseMetrics() {
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        heapPools.add(pool.getName());
+      }
+    }
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      if (gc instanceof NotificationEmitter) {
+        ((NotificationEmitter) gc).addNotificationListener(listener, null, null);
+        emitters.add((NotificationEmitter) gc);
+      }
+    }
+  }
+
+  /** A phase being measured. Closing it records it. */
+  public class Phase implements AutoCloseable {
+    private final JSONObject phase = new JSONObject();
+    private final JSONObject counts = new JSONObject();
+    private final long startNanos = System.nanoTime();
+    private final long startCpu = threadCpuNanos();
+    private final long startProcessCpu = processCpuNanos();
+    private final long startAllocated = threadAllocatedBytes();
+    private final AnalysisEvents.PhaseSpan event;
+
+    private Phase(String name) {
+      phase.put("name", name);
+      peakHeap.set(usedHeapBytes());
+      event = AnalysisEvents.beginPhase(name);
+    }
+
+    /** Record a count of the phase, e.g. the number of classes. */
+    public Phase count(String key, long value) {
+      counts.put(key, value);
+      return this;
+    }
+
+    /**
+     * Record how many threads the phase runs on, e.g. --load-threads.
+     * With more than one, its CPU time and allocated bytes are marked as those
+     * of the calling thread only.
+     */
+    public Phase threads(int threads) {
+      phase.put("threads", threads);
+      phase.put("thread_local", threads > 1);
+      return this;
+    }
+
+    /** Record a property of the phase, e.g. the context mode. */
+    public Phase put(String key, String value) {
+      phase.put(key, value);
+      if (key.equals("context_mode")) {
+        event.setContextMode(value);
+      }
+      return this;
+    }
+
+    @Override
+    public void close() {
+      long peak = peakHeap.accumulateAndGet(usedHeapBytes(), Math::max);
+      overallPeakHeap = Math.max(overallPeakHeap, peak);
+      phase.put("wall_millis", (System.nanoTime() - startNanos) / 1_000_000);
+      phase.put("cpu_millis", toMillis(difference(threadCpuNanos(), startCpu)));
+      phase.put("process_cpu_millis", toMillis(difference(processCpuNanos(), startProcessCpu)));
+      phase.put("allocated_bytes", difference(threadAllocatedBytes(), startAllocated));
+      phase.put("peak_heap_bytes", peak);
+      phase.put("counts", counts);
+      synchronized (phases) {
+        phases.add(phase);
+      }
+      event.end();
+    }
+  }
+
+  /**
+   * Start measuring a phase. Phases of one analysis follow each other.
+   *
+   * @param name E.g. class_hierarchy.
+   * @return Phase
+   */
+  public Phase start(String name) {
+    return new Phase(name);
+  }
+
+  /**
+   * @param file Where to save the metrics.
+   * @throws IOException
+   */
+  public void write(File file) throws IOException {
+    JSONObject metrics = new JSONObject();
+    synchronized (phases) {
+      metrics.put("phases", new JSONArray(phases));
+    }
+    metrics.put("wall_millis", System.currentTimeMillis() - start);
+    metrics.put("peak_heap_bytes", overallPeakHeap);
+    metrics.put("max_heap_bytes", Runtime.getRuntime().maxMemory());
+    try (FileWriter writer = new FileWriter(file)) {
+      writer.write(metrics.toString(2));
+    }
+    Log.info("Saving metrics to " + file.getAbsolutePath() + ".");
+  }
+
+  /** Stop listening to garbage collections. */
+  @Override
+  public void close() {
+    for (NotificationEmitter emitter : emitters) {
+      try {
+        emitter.removeNotificationListener(listener);
+      } catch (ListenerNotFoundException e) {
+        // Already removed.
+      }
+    }
+    emitters.clear();
+  }
+
+  private void handleNotification(Notification notification, Object handback) {
+    if (!notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+      return;
+    }
+    GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo
+        .from((CompositeData) notification.getUserData());
+    long used = 0;
+    for (Map.Entry<String, MemoryUsage> pool : info.getGcInfo().getMemoryUsageBeforeGc().entrySet()) {
+      if (heapPools.contains(pool.getKey())) {
+        used += pool.getValue().getUsed();
+      }
+    }
+    peakHeap.accumulateAndGet(used, Math::max);
+  }
+
+  private static long difference(long end, long start) {
+    return end < 0 || start < 0 ? -1 : end - start;
+  }
+
+  private static long toMillis(long nanos) {
+    return nanos < 0 ? -1 : nanos / 1_000_000;
+  }
+
+  private static long usedHeapBytes() {
+    return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+  }
+
+  private static long threadCpuNanos() {
+    java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : -1;
+  }
+
+  private static long processCpuNanos() {
+    java.lang.management.OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+    return os instanceof com.sun.management.OperatingSystemMXBean
+        ? ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime()
+        : -1;
+  }
+
+  private static long threadAllocatedBytes() {
+    java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (threads instanceof com.sun.management.ThreadMXBean) {
+      com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+      if (sunThreads.isThreadAllocatedMemorySupported() && sunThreads.isThreadAllocatedMemoryEnabled()) {
+        return sunThreads.getThreadAllocatedBytes(Thread.currentThread().getId());
+      }
+    }
+    return -1;
+  }
+}
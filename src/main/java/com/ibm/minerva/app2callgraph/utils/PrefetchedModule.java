@@ -0,0 +1,288 @@
+/*
+Copyright IBM Corporation 2023
+
+Licensed under the Apache Public License 2.0, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ibm.minerva.app2callgraph.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.jar.JarFile;
+
+import org.apache.commons.io.IOUtils;
+
+import com.ibm.wala.classLoader.JarFileModule;
+import com.ibm.wala.classLoader.Module;
+import com.ibm.wala.classLoader.ModuleEntry;
+
+/**
+ * A WALA module whose class files are read ahead of the class loaders. The
+ * class files of all modules are read and inflated on a fork-join pool by a
+ * {@link ReadAhead}. Each resulting module lists the class files of the module
+ * it was read from (nested modules flattened in place), and its entries hash
+ * and compare like the entries they wrap, so the class loaders collect and
+ * visit them in the same order as the original entries.
+ *
+ * <p>
+ * Memory is bounded: class files are read a module at a time, at most a window
+ * of them ahead of the module being loaded, and an entry drops its bytes once
+ * the class loader has read them. The class loaders load the modules of a scope
+ * in order, so once a module is loaded the bytes of the entries they skipped in
+ * the modules before it (e.g. classes already defined by a parent loader) are
+ * dropped too. Later reads (WALA re-reads a class file when its soft cache is
+ * cleared) go to the original entry.
+ */
+public class PrefetchedModule implements Module {
+
+  private final String name;
+  private final ReadAhead readAhead;
+  private final int index;
+  private final List<Entry> entries = new ArrayList<>();
+
+  private PrefetchedModule(String name, ReadAhead readAhead, int index) {
+    this.name = name;
+    this.readAhead = readAhead;
+    this.index = index;
+  }
+
+  /**
+   * Reads the class files of the modules added to it on a fork-join pool, a
+   * module at a time in scope order, keeping at most a window of them in memory
+   * beyond the module being loaded.
+   */
+  public static final class ReadAhead {
+    private final ForkJoinPool pool;
+    private final int window;
+    private final List<PrefetchedModule> modules = new ArrayList<>();
+    // Modules before it have been scheduled, and before loaded have been loaded.
+    private int next;
+    private int loaded;
+    private int ahead;
+
+    /**
+     * @param threads Number of threads to read class files with.
+     * @param window  Maximum number of class files held read but not consumed,
+     *                unless the module being loaded holds more.
+     */
+    public ReadAhead(int threads, int window) {
+      this.pool = new ForkJoinPool(threads);
+      this.window = window;
+    }
+
+    /**
+     * @param modules The modules to read.
+     * @return List<Module> : One prefetched module per input module, in order.
+     */
+    public synchronized List<Module> add(List<Module> modules) {
+      List<Module> prefetched = new ArrayList<>();
+      for (Module module : modules) {
+        PrefetchedModule p = new PrefetchedModule(module.toString(), this, this.modules.size());
+        collectClassFiles(module, p);
+        this.modules.add(p);
+        prefetched.add(p);
+      }
+      schedule(loaded);
+      return prefetched;
+    }
+
+    private void collectClassFiles(Module module, PrefetchedModule owner) {
+      // WALA names the classes of a jmod without their classes/ prefix, and
+      // skips its module-info, only when the module is the jmod itself.
+      boolean jmod = isJmod(module);
+      for (Iterator<? extends ModuleEntry> it = module.getEntries(); it.hasNext();) {
+        ModuleEntry entry = it.next();
+        if (entry.isClassFile()) {
+          String className = entry.getClassName();
+          if (jmod && className.startsWith("classes/module-info")) {
+            continue;
+          }
+          if (jmod && className.startsWith("classes/")) {
+            className = className.replace("classes/", "");
+          }
+          owner.entries.add(owner.new Entry(entry, className));
+        } else if (entry.isModuleFile()) {
+          collectClassFiles(entry.asModule(), owner);
+        }
+      }
+    }
+
+    private static boolean isJmod(Module module) {
+      if (!(module instanceof JarFileModule)) {
+        return false;
+      }
+      JarFile jarFile = ((JarFileModule) module).getJarFile();
+      return jarFile != null && jarFile.getName().endsWith(".jmod");
+    }
+
+    /**
+     * A class loader is loading a module: drop what is left of the modules
+     * before it and read it, and the modules after it up to the window.
+     */
+    private synchronized void loading(int index) {
+      for (; loaded < index; loaded++) {
+        for (Entry entry : modules.get(loaded).entries) {
+          if (entry.read != null) {
+            entry.read.cancel(false);
+            entry.read = null;
+            ahead--;
+          }
+        }
+      }
+      schedule(index);
+      if (next == modules.size()) {
+        // Every read is submitted: let the workers exit once they are done.
+        pool.shutdown();
+      }
+    }
+
+    /**
+     * Start reading the modules up to the given one, and the modules after it
+     * while the window has room.
+     */
+    private void schedule(int index) {
+      next = Math.max(next, loaded);
+      while (next < modules.size() && (next <= index || ahead < window)) {
+        PrefetchedModule module = modules.get(next++);
+        for (Entry entry : module.entries) {
+          ModuleEntry original = entry.original;
+          entry.read = CompletableFuture.supplyAsync(() -> read(original), pool);
+          ahead++;
+        }
+      }
+    }
+
+    /**
+     * Hand over the bytes read for a class file, the first time it is asked
+     * for, and read further ahead.
+     */
+    private InputStream open(Entry entry) {
+      CompletableFuture<byte[]> read;
+      synchronized (this) {
+        read = entry.read;
+        if (read != null) {
+          entry.read = null;
+          ahead--;
+          schedule(-1);
+        }
+      }
+      if (read != null) {
+        try {
+          return new ByteArrayInputStream(read.join());
+        } catch (CompletionException e) {
+          // Let the original entry report the failure.
+        }
+      }
+      return entry.original.getInputStream();
+    }
+  }
+
+  private static byte[] read(ModuleEntry entry) {
+    AnalysisEvents.Span event = AnalysisEvents.beginModule("read", null, entry.toString());
+    try (InputStream in = entry.getInputStream()) {
+      return IOUtils.toByteArray(in);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      event.end();
+    }
+  }
+
+  /** @return int : The number of class files in this module. */
+  public int size() {
+    return entries.size();
+  }
+
+  @Override
+  public Iterator<? extends ModuleEntry> getEntries() {
+    readAhead.loading(index);
+    return entries.iterator();
+  }
+
+  @Override
+  public String toString() {
+    return "PrefetchedModule:" + name;
+  }
+
+  private class Entry implements ModuleEntry {
+    private final ModuleEntry original;
+    private final String className;
+    // Guarded by the read-ahead.
+    private CompletableFuture<byte[]> read;
+
+    Entry(ModuleEntry original, String className) {
+      this.original = original;
+      this.className = className;
+    }
+
+    @Override
+    public String getName() {
+      return original.getName();
+    }
+
+    @Override
+    public boolean isClassFile() {
+      return true;
+    }
+
+    @Override
+    public boolean isSourceFile() {
+      return false;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+      return readAhead.open(this);
+    }
+
+    @Override
+    public boolean isModuleFile() {
+      return false;
+    }
+
+    @Override
+    public Module asModule() {
+      throw new UnsupportedOperationException(getName() + " is not a module");
+    }
+
+    @Override
+    public String getClassName() {
+      return className;
+    }
+
+    @Override
+    public Module getContainer() {
+      return PrefetchedModule.this;
+    }
+
+    @Override
+    public int hashCode() {
+      return original.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof PrefetchedModule.Entry && original.equals(((PrefetchedModule.Entry) o).original);
+    }
+
+    @Override
+    public String toString() {
+      return original.getName();
+    }
+  }
+}
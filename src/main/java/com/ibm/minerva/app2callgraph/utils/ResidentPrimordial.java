@@ -0,0 +1,85 @@
+/*
+Copyright IBM Corporation 2023
+
+Licensed under the Apache Public License 2.0, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ibm.minerva.app2callgraph.utils;
+
+import java.io.IOException;
+
+import com.ibm.wala.classLoader.ClassLoaderFactory;
+import com.ibm.wala.classLoader.IClassLoader;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.ipa.cha.ClassHierarchyFactory;
+import com.ibm.wala.ipa.cha.IClassHierarchy;
+import com.ibm.wala.types.ClassLoaderReference;
+import com.ibm.wala.util.config.SetOfClasses;
+
+/**
+ * A primordial class loader over the Java SE standard libs that is loaded once
+ * and shared by the class hierarchies of many analyses. The loader factories it
+ * makes hand out the resident loader for the primordial loader reference (and
+ * as the parent of the extension loader) and create the other loaders as usual.
+ *
+ * <p>
+ * The standard library classes cache their members lazily, so the class
+ * hierarchies sharing a resident loader must be used one at a time.
+ */
+public class ResidentPrimordial {
+
+  private final IClassHierarchy cha;
+  private final IClassLoader loader;
+
+  private ResidentPrimordial(IClassHierarchy cha) {
+    this.cha = cha;
+    this.loader = cha.getLoader(ClassLoaderReference.Primordial);
+  }
+
+  /**
+   * Load the Java SE standard libs.
+   *
+   * @return ResidentPrimordial
+   * @throws IOException
+   * @throws ClassHierarchyException
+   */
+  public static ResidentPrimordial load() throws IOException, ClassHierarchyException {
+    long start = System.currentTimeMillis();
+    AnalysisScope scope = ScopeUtils.createPrimordialScope();
+    IClassHierarchy cha = ClassHierarchyFactory.make(scope, new EventLoaderFactory(scope.getExclusions()));
+    Log.done("Loaded " + cha.getNumberOfClasses() + " standard library classes in "
+        + (System.currentTimeMillis() - start) + " milliseconds.");
+    return new ResidentPrimordial(cha);
+  }
+
+  /**
+   * @param exclusions Exclusions of the analysis scope.
+   * @return ClassLoaderFactory : A factory that reuses the resident primordial
+   *         loader.
+   */
+  public ClassLoaderFactory makeLoaderFactory(SetOfClasses exclusions) {
+    return new EventLoaderFactory(exclusions) {
+      @Override
+      public IClassLoader getLoader(ClassLoaderReference classLoaderReference, IClassHierarchy cha,
+          AnalysisScope scope) throws IOException {
+        if (classLoaderReference.equals(ClassLoaderReference.Primordial)) {
+          return loader;
+        }
+        return super.getLoader(classLoaderReference, cha, scope);
+      }
+    };
+  }
+
+  /** @return int : The number of resident classes. */
+  public int getNumberOfClasses() {
+    return cha.getNumberOfClasses();
+  }
+}
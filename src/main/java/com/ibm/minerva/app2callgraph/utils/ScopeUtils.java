@@ -16,32 +16,29 @@ package com.ibm.minerva.app2callgraph.utils;
 import com.ibm.wala.cast.java.ipa.callgraph.JavaSourceAnalysisScope;
 import com.ibm.wala.classLoader.BinaryDirectoryTreeModule;
 import com.ibm.wala.classLoader.JarFileModule;
+import com.ibm.wala.classLoader.Module;
 import com.ibm.wala.ipa.callgraph.AnalysisScope;
 import com.ibm.wala.properties.WalaProperties;
 import com.ibm.wala.types.ClassLoaderReference;
 import com.ibm.wala.util.config.FileOfClasses;
-import org.apache.commons.io.FileUtils;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URISyntaxException;
-import java.net.URL;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.UUID;
 import java.util.jar.JarFile;
 
 public class ScopeUtils {
 
-  public static String[] stdLibs;
   // I am not including any exclusions for now.
   private static final String EXCLUSIONS = "";
 
+  private static final int PREFETCH_WINDOW = 4096;
+
   /**
    * Create an analysis scope base on the input
    *
@@ -52,17 +49,96 @@ public class ScopeUtils {
    */
 
   public static AnalysisScope createScope(String inputs, String extraLibs) throws IOException, URISyntaxException {
+    return createScope(inputs, extraLibs, null);
+  }
+
+  /**
+   * Create an analysis scope base on the input
+   *
+   * @param inputs       Directories to consider for scope creation.
+   * @param extraLibs    Directory of extra libraries (may be null).
+   * @param archiveCache Cache of unpacked archives. If null, *.ear/*.war files
+   *                     are read in place.
+   * @return scope The created analysis scope
+   * @throws IOException
+   * @throws URISyntaxException
+   */
+  public static AnalysisScope createScope(String inputs, String extraLibs, ArchiveCache archiveCache)
+      throws IOException, URISyntaxException {
+    return createScope(inputs, getExtraLibs(extraLibs), archiveCache);
+  }
+
+  /**
+   * Create an analysis scope base on the input
+   *
+   * @param inputs       Directories to consider for scope creation.
+   * @param extraLibs    Paths of the extra libraries (see
+   *                     {@link #getExtraLibs(String)}).
+   * @param archiveCache Cache of unpacked archives (may be null).
+   * @return scope The created analysis scope
+   * @throws IOException
+   * @throws URISyntaxException
+   */
+  public static AnalysisScope createScope(String inputs, List<String> extraLibs, ArchiveCache archiveCache)
+      throws IOException, URISyntaxException {
     Log.info("Create analysis scope.");
     AnalysisScope scope = new JavaSourceAnalysisScope();
     scope = addDefaultExclusions(scope);
 
+    List<String> libs = getStdLibPaths();
+    libs.addAll(extraLibs);
+    addLibraries(scope, ClassLoaderReference.Primordial, libs);
+    addApplication(scope, inputs, archiveCache);
+    return scope;
+  }
+
+  /**
+   * Create a scope holding only the Java SE standard libs, for a primordial
+   * class loader that is kept resident across analyses.
+   *
+   * @return scope The created analysis scope
+   * @throws IOException
+   */
+  public static AnalysisScope createPrimordialScope() throws IOException {
+    Log.info("Create primordial analysis scope.");
+    AnalysisScope scope = addDefaultExclusions(new JavaSourceAnalysisScope());
+    addLibraries(scope, ClassLoaderReference.Primordial, getStdLibPaths());
+    return scope;
+  }
+
+  /**
+   * Create a scope for a class hierarchy whose primordial loader is a resident
+   * one (see {@link ResidentPrimordial}). The Java SE standard libs are left
+   * out, and the extra libraries are added to the extension loader.
+   *
+   * @param inputs       Directories to consider for scope creation.
+   * @param extraLibs    Paths of the extra libraries (see
+   *                     {@link #getExtraLibs(String)}).
+   * @param archiveCache Cache of unpacked archives (may be null).
+   * @return scope The created analysis scope
+   * @throws IOException
+   * @throws URISyntaxException
+   */
+  public static AnalysisScope createApplicationScope(String inputs, List<String> extraLibs,
+      ArchiveCache archiveCache) throws IOException, URISyntaxException {
+    Log.info("Create analysis scope over the resident standard libs.");
+    AnalysisScope scope = addDefaultExclusions(new JavaSourceAnalysisScope());
+    addLibraries(scope, ClassLoaderReference.Extension, extraLibs);
+    addApplication(scope, inputs, archiveCache);
+    return scope;
+  }
+
+  private static List<String> getStdLibPaths() {
     Log.info("Loading Java SE standard libs.");
-    String[] stdlibs = WalaProperties.getJ2SEJarFiles();
-    for (String stdlib : stdlibs) {
-      scope.addToScope(ClassLoaderReference.Primordial, new JarFile(stdlib));
-    }
-    setStdLibs(stdlibs);
+    return new ArrayList<>(Arrays.asList(getStdLibs()));
+  }
 
+  /**
+   * @param extraLibs Directory of extra libraries (may be null).
+   * @return List<String> : The absolute paths of the libraries in it.
+   */
+  public static List<String> getExtraLibs(String extraLibs) {
+    List<String> libs = new ArrayList<>();
     // -------------------------------------
     // Add extra user provided JARS to scope
     // -------------------------------------
@@ -71,27 +147,41 @@ public class ScopeUtils {
       File[] listOfExtraLibs = new File(extraLibs).listFiles();
       for (File extraLibJar : listOfExtraLibs) {
         Log.info("↪ Adding " + extraLibJar + " to scope.");
-        scope.addToScope(ClassLoaderReference.Primordial, new JarFile(extraLibJar.getAbsolutePath()));
+        libs.add(extraLibJar.getAbsolutePath());
       }
     } else {
       Log.warn("No extra libraries to process.");
     }
+    return libs;
+  }
+
+  private static void addLibraries(AnalysisScope scope, ClassLoaderReference loader, List<String> libs)
+      throws IOException {
+    if (libs.isEmpty()) {
+      return;
+    }
+    for (String lib : libs) {
+      scope.addToScope(loader, new JarFile(lib));
+    }
+  }
 
-    Path path = Paths.get(FileUtils.getTempDirectory().getAbsolutePath(), UUID.randomUUID().toString());
-    String tmpDirString = Files.createDirectories(path).toFile().getAbsolutePath();
-    Path workDir = Paths.get(tmpDirString);
-//    Log.debug("Unpacking *.{jar, war, ear} to " + workDir);
-    FileUtils.cleanDirectory(workDir.toFile());
+  private static void addApplication(AnalysisScope scope, String inputs, ArchiveCache archiveCache)
+      throws IOException, URISyntaxException {
     List<String> classRoots = new ArrayList<>();
     List<String> jars = new ArrayList<>();
+    List<Module> archiveClassRoots = new ArrayList<>();
+    List<Module> archiveJars = new ArrayList<>();
 
     String[] binaryFiles = inputs.split(":");
 
     for (String s : binaryFiles) {
       if (new File(s).isDirectory()) {
         classRoots.add(s);
+      } else if ((s.endsWith(".ear") || s.endsWith(".war")) && archiveCache != null) {
+        archiveCache.unpackArchives(s, classRoots, jars);
       } else if (s.endsWith(".ear") || s.endsWith(".war")) {
-        JarUtils.unpackArchives(s, workDir.resolve("unpacked"), classRoots, jars);
+        Log.info("Reading " + s + " in place.");
+        JarUtils.openArchives(s, archiveClassRoots, archiveJars);
       } else {
         jars.add(s);
       }
@@ -101,10 +191,42 @@ public class ScopeUtils {
       scope.addToScope(
           ClassLoaderReference.Application, new BinaryDirectoryTreeModule(new File(classRoot)));
     }
+    for (Module classRoot : archiveClassRoots) {
+      scope.addToScope(ClassLoaderReference.Application, classRoot);
+    }
     for (String jar : jars) {
       scope.addToScope(ClassLoaderReference.Application, new JarFileModule(new JarFile(jar)));
     }
-    return scope;
+    for (Module jar : archiveJars) {
+      scope.addToScope(ClassLoaderReference.Application, jar);
+    }
+  }
+
+  /**
+   * Copy a scope whose class files are read ahead of the class loaders on a
+   * fork-join pool. The class hierarchy built from the copy is identical to the
+   * one built from the original scope, but the class loaders no longer wait on
+   * zip inflation and file I/O one class file at a time. Besides the module
+   * being loaded, at most {@value #PREFETCH_WINDOW} class files are held in
+   * memory at once.
+   *
+   * @param scope   The scope to copy.
+   * @param threads Number of threads to read class files with.
+   * @return scope The prefetched analysis scope
+   */
+  public static AnalysisScope prefetchScope(AnalysisScope scope, int threads) {
+    AnalysisScope prefetched = new JavaSourceAnalysisScope();
+    prefetched.setExclusions(scope.getExclusions());
+    PrefetchedModule.ReadAhead readAhead = new PrefetchedModule.ReadAhead(threads, PREFETCH_WINDOW);
+    int numClassFiles = 0;
+    for (ClassLoaderReference loader : scope.getLoaders()) {
+      for (Module module : readAhead.add(scope.getModules(loader))) {
+        numClassFiles += ((PrefetchedModule) module).size();
+        prefetched.addToScope(loader, module);
+      }
+    }
+    Log.info("Reading " + numClassFiles + " class files ahead on " + threads + " threads.");
+    return prefetched;
   }
 
   private static AnalysisScope addDefaultExclusions(AnalysisScope scope)
@@ -114,11 +236,8 @@ public class ScopeUtils {
     return scope;
   }
 
-  private static void setStdLibs(String[] stdlibs) {
-    stdLibs = stdlibs;
-  }
-
+  /** @return String[] : The jars of the Java SE standard libs, in a new array. */
   public static String[] getStdLibs() {
-    return stdLibs;
+    return WalaProperties.getJ2SEJarFiles();
   }
 }
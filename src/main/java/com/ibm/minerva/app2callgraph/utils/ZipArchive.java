@@ -0,0 +1,334 @@
+/*
+Copyright IBM Corporation 2023
+
+Licensed under the Apache Public License 2.0, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ibm.minerva.app2callgraph.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Read-only view over a zip archive (*.jar, *.war, *.ear) that may itself be an
+ * entry of another archive. An archive on disk is read through {@link ZipFile}
+ * and serves its entries straight from the file. Nested archives are read from
+ * their enclosing archive the first time they are used, and keep only the
+ * entries a filter accepts (e.g. class files), still compressed, and the
+ * archives nested in them. Entries are inflated each time they are opened, so
+ * static assets never reach the heap, class files are held at their compressed
+ * size, and nothing is written to disk.
+ */
+public abstract class ZipArchive implements Closeable {
+
+  private static final int END_HEADER = 0x06054b50;
+  private static final int CENTRAL_HEADER = 0x02014b50;
+  private static final int LOCAL_HEADER = 0x04034b50;
+
+  private final String path;
+  protected final Predicate<String> keep;
+
+  private ZipArchive(String path, Predicate<String> keep) {
+    this.path = path;
+    this.keep = keep;
+  }
+
+  /**
+   * Open an archive on disk. It is read in place, so it must be closed once its
+   * entries and nested archives are no longer read.
+   *
+   * @param file The archive file.
+   * @param keep The entries of nested archives to keep.
+   * @return ZipArchive
+   * @throws IOException
+   */
+  public static ZipArchive open(File file, Predicate<String> keep) throws IOException {
+    return new OnDisk(file, keep);
+  }
+
+  /**
+   * @return String : The path of the archive. Nested archives use '!/' to
+   *         separate the enclosing archive from the entry name.
+   */
+  public String getPath() {
+    return path;
+  }
+
+  /**
+   * @return List<String> : The names of the (non-directory) entries. A nested
+   *         archive only lists its kept entries and nested archives.
+   * @throws IOException
+   */
+  public abstract List<String> getEntryNames() throws IOException;
+
+  /**
+   * @param name Name of the entry.
+   * @return InputStream : A fresh stream over the uncompressed entry.
+   * @throws IOException
+   */
+  public abstract InputStream getInputStream(String name) throws IOException;
+
+  /**
+   * Open an entry of this archive as an archive of its own. It is read when it
+   * is first used, and is only valid while this archive is open.
+   *
+   * @param name Name of the entry (e.g. WEB-INF/lib/foo.jar).
+   * @return ZipArchive
+   * @throws IOException
+   */
+  public abstract ZipArchive nested(String name) throws IOException;
+
+  @Override
+  public void close() throws IOException {
+  }
+
+  @Override
+  public String toString() {
+    return path;
+  }
+
+  private static boolean isArchive(String name) {
+    return name.endsWith(".jar") || name.endsWith(".war");
+  }
+
+  private static class OnDisk extends ZipArchive {
+    private final ZipFile zipFile;
+    private final List<String> names = new ArrayList<>();
+
+    OnDisk(File file, Predicate<String> keep) throws IOException {
+      super(file.getAbsolutePath(), keep);
+      zipFile = new ZipFile(file);
+      Enumeration<? extends ZipEntry> entries = zipFile.entries();
+      while (entries.hasMoreElements()) {
+        ZipEntry entry = entries.nextElement();
+        if (!entry.isDirectory()) {
+          names.add(entry.getName());
+        }
+      }
+    }
+
+    @Override
+    public List<String> getEntryNames() {
+      return Collections.unmodifiableList(names);
+    }
+
+    @Override
+    public InputStream getInputStream(String name) throws IOException {
+      ZipEntry entry = zipFile.getEntry(name);
+      if (entry == null) {
+        throw new IOException("No entry " + name + " in " + getPath());
+      }
+      return zipFile.getInputStream(entry);
+    }
+
+    @Override
+    public ZipArchive nested(String name) throws IOException {
+      if (zipFile.getEntry(name) == null) {
+        throw new IOException("No archive " + name + " in " + getPath());
+      }
+      return new Nested(getPath() + "!/" + name, this, name, keep);
+    }
+
+    @Override
+    public void close() throws IOException {
+      zipFile.close();
+    }
+  }
+
+  /**
+   * An archive read into memory from an entry of another archive. Its central
+   * directory is parsed directly, so that kept entries can be held compressed
+   * and the archives nested in it can be indexed without copying them when they
+   * are stored.
+   */
+  private static class Nested extends ZipArchive {
+    private final ZipArchive parent;
+    private final String entryName;
+    private Map<String, Entry> entries;
+    private Map<String, Nested> archives;
+    private List<String> names;
+
+    /** An archive read from its parent when it is first used. */
+    Nested(String path, ZipArchive parent, String entryName, Predicate<String> keep) {
+      super(path, keep);
+      this.parent = parent;
+      this.entryName = entryName;
+    }
+
+    /** An archive indexed from the bytes of its entry in its parent. */
+    private Nested(String path, byte[] bytes, int offset, int length, Predicate<String> keep) throws IOException {
+      super(path, keep);
+      this.parent = null;
+      this.entryName = null;
+      index(bytes, offset, length);
+    }
+
+    private synchronized void load() throws IOException {
+      if (names != null) {
+        return;
+      }
+      AnalysisEvents.Span event = AnalysisEvents.beginModule("read", null, getPath());
+      try (InputStream in = parent.getInputStream(entryName)) {
+        byte[] bytes = IOUtils.toByteArray(in);
+        index(bytes, 0, bytes.length);
+      } finally {
+        event.end();
+      }
+    }
+
+    private void index(byte[] bytes, int offset, int length) throws IOException {
+      Map<String, Entry> entries = new LinkedHashMap<>();
+      Map<String, Nested> archives = new LinkedHashMap<>();
+      List<String> names = new ArrayList<>();
+      int end = length - 22;
+      while (end >= 0 && u32(bytes, offset + end) != END_HEADER) {
+        end--;
+      }
+      if (end < 0) {
+        throw new ZipException("No central directory in " + getPath());
+      }
+      int numEntries = u16(bytes, offset + end + 10);
+      long directory = u32(bytes, offset + end + 16) & 0xffffffffL;
+      if (numEntries == 0xffff || directory == 0xffffffffL) {
+        throw new ZipException("Zip64 archive " + getPath() + " cannot be read nested");
+      }
+      int p = (int) directory;
+      for (int i = 0; i < numEntries; i++) {
+        if (p + 46 > length || u32(bytes, offset + p) != CENTRAL_HEADER) {
+          throw new ZipException("Bad central directory in " + getPath());
+        }
+        int method = u16(bytes, offset + p + 10);
+        long compressedSize = u32(bytes, offset + p + 20) & 0xffffffffL;
+        long size = u32(bytes, offset + p + 24) & 0xffffffffL;
+        int nameLength = u16(bytes, offset + p + 28);
+        int extraLength = u16(bytes, offset + p + 30);
+        int commentLength = u16(bytes, offset + p + 32);
+        long local = u32(bytes, offset + p + 42) & 0xffffffffL;
+        String name = new String(bytes, offset + p + 46, nameLength, StandardCharsets.UTF_8);
+        p += 46 + nameLength + extraLength + commentLength;
+        if (name.endsWith("/") || !(isArchive(name) || keep.test(name))) {
+          continue;
+        }
+        if (local + 30 > length || u32(bytes, offset + (int) local) != LOCAL_HEADER) {
+          throw new ZipException("Bad local header of " + name + " in " + getPath());
+        }
+        long data = local + 30 + u16(bytes, offset + (int) local + 26) + u16(bytes, offset + (int) local + 28);
+        if (data + compressedSize > length || size > Integer.MAX_VALUE) {
+          throw new ZipException("Bad size of " + name + " in " + getPath());
+        }
+        if (method != ZipEntry.STORED && method != ZipEntry.DEFLATED) {
+          throw new ZipException("Unsupported compression method of " + name + " in " + getPath());
+        }
+        int start = offset + (int) data;
+        int stop = start + (int) compressedSize;
+        if (isArchive(name) && method == ZipEntry.STORED) {
+          archives.put(name, new Nested(getPath() + "!/" + name, bytes, start, stop - start, keep));
+        } else if (isArchive(name)) {
+          // Inflated only for as long as it takes to index it.
+          byte[] inflated = inflate(bytes, start, stop, (int) size);
+          archives.put(name, new Nested(getPath() + "!/" + name, inflated, 0, inflated.length, keep));
+        } else {
+          entries.put(name, new Entry(method, (int) size, Arrays.copyOfRange(bytes, start, stop)));
+        }
+        names.add(name);
+      }
+      this.entries = entries;
+      this.archives = archives;
+      this.names = names;
+    }
+
+    @Override
+    public List<String> getEntryNames() throws IOException {
+      load();
+      return Collections.unmodifiableList(names);
+    }
+
+    @Override
+    public InputStream getInputStream(String name) throws IOException {
+      load();
+      Entry entry = entries.get(name);
+      if (entry == null) {
+        throw new IOException("No entry " + name + " in " + getPath());
+      }
+      return new ByteArrayInputStream(entry.method == ZipEntry.STORED ? entry.data
+          : inflate(entry.data, 0, entry.data.length, entry.size));
+    }
+
+    @Override
+    public ZipArchive nested(String name) throws IOException {
+      load();
+      ZipArchive archive = archives.get(name);
+      if (archive == null) {
+        throw new IOException("No archive " + name + " in " + getPath());
+      }
+      return archive;
+    }
+  }
+
+  private static final class Entry {
+    private final int method;
+    private final int size;
+    private final byte[] data;
+
+    Entry(int method, int size, byte[] data) {
+      this.method = method;
+      this.size = size;
+      this.data = data;
+    }
+  }
+
+  private static byte[] inflate(byte[] bytes, int start, int end, int size) throws IOException {
+    Inflater inflater = new Inflater(true);
+    try {
+      inflater.setInput(bytes, start, end - start);
+      byte[] inflated = new byte[size];
+      int n = 0;
+      while (n < size) {
+        int read = inflater.inflate(inflated, n, size - n);
+        if (read == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+          throw new ZipException("Truncated zip entry");
+        }
+        n += read;
+      }
+      return inflated;
+    } catch (DataFormatException e) {
+      throw new ZipException(e.getMessage());
+    } finally {
+      inflater.end();
+    }
+  }
+
+  private static int u16(byte[] bytes, int i) {
+    return (bytes[i] & 0xff) | (bytes[i + 1] & 0xff) << 8;
+  }
+
+  private static int u32(byte[] bytes, int i) {
+    return u16(bytes, i) | u16(bytes, i + 2) << 16;
+  }
+}
@@ -0,0 +1,113 @@
+/*
+Copyright IBM Corporation 2023
+
+Licensed under the Apache Public License 2.0, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ibm.minerva.app2callgraph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.json.JSONObject;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.ibm.minerva.app2callgraph.entities.ClassGraph;
+import com.ibm.minerva.app2callgraph.utils.AnalysisUtils;
+import com.ibm.minerva.app2callgraph.utils.BudgetMonitor;
+import com.ibm.minerva.app2callgraph.utils.ClassMetricsTable;
+import com.ibm.minerva.app2callgraph.utils.Log;
+import com.ibm.minerva.app2callgraph.utils.ScopeUtils;
+import com.ibm.wala.cast.java.translator.jdt.ecj.ECJClassLoaderFactory;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.callgraph.Entrypoint;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.ipa.cha.ClassHierarchyFactory;
+import com.ibm.wala.ipa.cha.IClassHierarchy;
+
+/**
+ * Builds the call graph of a demo application in shards, on threads of their
+ * own, and compares it with the graph of a single run.
+ */
+public class ShardedCallGraphTest {
+
+  private static final String APP = "daytrader8";
+
+  private static AnalysisScope scope;
+  private static IClassHierarchy cha;
+  private static Iterable<Entrypoint> entryPoints;
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    Log.setVerbosity(false);
+    File dir = new File(System.getProperty("app2callgraph.demo", "etc/demo"), APP);
+    File[] binaries = new File(dir, "binary").listFiles(File::isFile);
+    scope = ScopeUtils.createScope(binaries[0].getPath(), new File(dir, "dependencies").getPath());
+    cha = makeClassHierarchy();
+    entryPoints = AnalysisUtils.getEntryPoints(cha);
+  }
+
+  private static IClassHierarchy makeClassHierarchy() throws ClassHierarchyException {
+    return ClassHierarchyFactory.make(scope, new ECJClassLoaderFactory(scope.getExclusions()));
+  }
+
+  private ClassGraph build(int numShards, boolean compare) throws Exception {
+    return ShardedCallGraph.build(cha, ShardedCallGraphTest::makeClassHierarchy, entryPoints, "rta", numShards,
+        "package", compare, tmp.getRoot().getPath(), new BudgetMonitor(0, 0), new ClassMetricsTable(),
+        "entrypoints");
+  }
+
+  @Test
+  public void oneShardEqualsSingleRun() throws Exception {
+    build(1, true);
+    JSONObject monolithic = report().getJSONObject("monolithic");
+    assertEquals(0, monolithic.getJSONArray("edges_only_in_sharded").length());
+    assertEquals(0, monolithic.getJSONArray("edges_only_in_monolithic").length());
+  }
+
+  @Test
+  public void shardsFindOnlyEdgesOfSingleRun() throws Exception {
+    ClassGraph merged = build(4, true);
+    JSONObject report = report();
+    assertEquals(4, report.getInt("num_shards"));
+    assertEquals(0, report.getJSONObject("monolithic").getJSONArray("edges_only_in_sharded").length());
+    assertTrue(merged.getNumEdges() > 0);
+  }
+
+  @Test
+  public void shardsAreDeterministic() throws Exception {
+    assertEquals(edgeKeys(build(4, false)), edgeKeys(build(4, false)));
+  }
+
+  private JSONObject report() throws Exception {
+    return new JSONObject(new String(Files.readAllBytes(new File(tmp.getRoot(), "shard_report_rta.json").toPath()),
+        StandardCharsets.UTF_8));
+  }
+
+  private static Set<String> edgeKeys(ClassGraph graph) {
+    Set<String> keys = new HashSet<>();
+    for (int e = 0; e < graph.getNumEdges(); e++) {
+      keys.add(graph.getNode(graph.getSource(e)) + " -> " + graph.getNode(graph.getTarget(e)));
+    }
+    return keys;
+  }
+}
@@ -0,0 +1,158 @@
+package com.ibm.minerva.app2callgraph.entities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.jgrapht.Graph;
+import org.jgrapht.graph.DefaultDirectedGraph;
+import org.junit.Test;
+
+import com.ibm.wala.core.util.strings.Atom;
+
+/**
+ * Checks {@link ClassGraph} on small hand-written graphs, and against the
+ * JGraphT graph the entrypoint projection used to build on random sequences of
+ * calls.
+ */
+public class ClassGraphTest {
+
+    @Test
+    public void matchesDefaultDirectedGraph() throws Exception {
+        TestGraphs.forEachSeed(random -> {
+            // Few classes and labels, so edges are re-weighted and label pairs collide.
+            List<CallGraphNode> classes = TestGraphs.classes(1 + random.nextInt(20));
+            List<Atom> labels = TestGraphs.labels(1 + random.nextInt(10));
+            Graph<CallGraphNode, CallGraphEdge> expected = new DefaultDirectedGraph<>(CallGraphEdge.class);
+            ClassGraph actual = new ClassGraph();
+            int numCalls = random.nextInt(500);
+            for (int i = 0; i < numCalls; i++) {
+                CallGraphNode source = classes.get(random.nextInt(classes.size()));
+                CallGraphNode target = classes.get(random.nextInt(classes.size()));
+                Atom sourceLabel = labels.get(random.nextInt(labels.size()));
+                Atom targetLabel = labels.get(random.nextInt(labels.size()));
+                addCall(expected, source, target, sourceLabel, targetLabel);
+                actual.addEdge(actual.addNode(source), actual.addNode(target), sourceLabel, targetLabel, 1.0);
+            }
+            assertSameGraph("ClassGraph", expected, actual);
+            assertSameGraph("toGraph", expected, actual.toGraph());
+        });
+    }
+
+    @Test
+    public void repeatedCallsAddWeightToTheFirstEdge() {
+        List<CallGraphNode> classes = TestGraphs.classes(2);
+        List<Atom> labels = TestGraphs.labels(3);
+        ClassGraph graph = new ClassGraph();
+        int c0 = graph.addNode(classes.get(0));
+        int c1 = graph.addNode(classes.get(1));
+        assertTrue(graph.addEdge(c0, c1, labels.get(0), labels.get(1), 1.0));
+        assertTrue(graph.addEdge(c0, c1, labels.get(1), labels.get(2), 1.0));
+        assertTrue(graph.addEdge(c1, c0, labels.get(2), labels.get(0), 1.0));
+        assertEquals(c0, graph.addNode(classes.get(0)));
+        assertEquals(2, graph.getNumNodes());
+        assertEquals(2, graph.getNumEdges());
+        // C0 -> C1 keeps the labels of its first call.
+        assertEquals(Arrays.asList("C0 -> C1 m0 -> m1 2.0", "C1 -> C0 m2 -> m0 1.0"), describe(graph));
+    }
+
+    @Test
+    public void addAllSumsWeights() {
+        List<CallGraphNode> classes = TestGraphs.classes(3);
+        List<Atom> labels = TestGraphs.labels(1);
+        Atom m = labels.get(0);
+        ClassGraph first = new ClassGraph(false);
+        first.addEdge(first.addNode(classes.get(0)), first.addNode(classes.get(1)), m, m, 1.0);
+        first.addEdge(first.addNode(classes.get(1)), first.addNode(classes.get(2)), m, m, 1.0);
+        ClassGraph second = new ClassGraph(false);
+        second.addEdge(second.addNode(classes.get(2)), second.addNode(classes.get(0)), m, m, 1.0);
+        second.addEdge(second.addNode(classes.get(0)), second.addNode(classes.get(1)), m, m, 2.5);
+        ClassGraph merged = new ClassGraph(false);
+        merged.addAll(first);
+        merged.addAll(second);
+        assertEquals(classes, nodeList(merged));
+        assertEquals(Arrays.asList("C0 -> C1 m0 -> m0 3.5", "C1 -> C2 m0 -> m0 1.0", "C2 -> C0 m0 -> m0 1.0"),
+                describe(merged));
+    }
+
+    @Test
+    public void distinctLabelsRejectSecondEdgeWithSameLabels() {
+        List<CallGraphNode> classes = TestGraphs.classes(3);
+        Atom label = Atom.findOrCreateUnicodeAtom("m");
+        ClassGraph distinct = new ClassGraph();
+        assertTrue(distinct.addEdge(distinct.addNode(classes.get(0)), distinct.addNode(classes.get(1)), label,
+                label, 1.0));
+        assertFalse(distinct.addEdge(distinct.addNode(classes.get(0)), distinct.addNode(classes.get(2)), label,
+                label, 1.0));
+        ClassGraph any = new ClassGraph(false);
+        assertTrue(any.addEdge(any.addNode(classes.get(0)), any.addNode(classes.get(1)), label, label, 1.0));
+        assertTrue(any.addEdge(any.addNode(classes.get(0)), any.addNode(classes.get(2)), label, label, 1.0));
+    }
+
+    /** What the entrypoint projection did for every call before ClassGraph. */
+    private static void addCall(Graph<CallGraphNode, CallGraphEdge> graph, CallGraphNode source,
+            CallGraphNode target, Atom sourceLabel, Atom targetLabel) {
+        graph.addVertex(source);
+        graph.addVertex(target);
+        CallGraphEdge edge = graph.getEdge(source, target);
+        if (edge == null) {
+            graph.addEdge(source, target, new CallGraphEdge(sourceLabel, targetLabel, 1.0));
+        } else {
+            edge.incrementWeight();
+        }
+    }
+
+    private static void assertSameGraph(String message, Graph<CallGraphNode, CallGraphEdge> expected,
+            ClassGraph actual) {
+        assertEquals(message, new ArrayList<>(expected.vertexSet()), nodeList(actual));
+        assertEquals(message, expected.edgeSet().size(), actual.getNumEdges());
+        Iterator<CallGraphEdge> edges = expected.edgeSet().iterator();
+        for (int e = 0; e < actual.getNumEdges(); e++) {
+            CallGraphEdge edge = edges.next();
+            assertEquals(message, expected.getEdgeSource(edge), actual.getNode(actual.getSource(e)));
+            assertEquals(message, expected.getEdgeTarget(edge), actual.getNode(actual.getTarget(e)));
+            assertEquals(message, edge.getSource(), actual.getSourceLabel(e).toString());
+            assertEquals(message, edge.getDestination(), actual.getTargetLabel(e).toString());
+            assertEquals(message, edge.getWeight(), actual.getWeight(e), 0.0);
+        }
+    }
+
+    private static void assertSameGraph(String message, Graph<CallGraphNode, CallGraphEdge> expected,
+            Graph<CallGraphNode, CallGraphEdge> actual) {
+        assertEquals(message, new ArrayList<>(expected.vertexSet()), new ArrayList<>(actual.vertexSet()));
+        List<CallGraphEdge> expectedEdges = new ArrayList<>(expected.edgeSet());
+        List<CallGraphEdge> actualEdges = new ArrayList<>(actual.edgeSet());
+        assertEquals(message, expectedEdges, actualEdges);
+        for (int e = 0; e < expectedEdges.size(); e++) {
+            assertEquals(message, expected.getEdgeSource(expectedEdges.get(e)),
+                    actual.getEdgeSource(actualEdges.get(e)));
+            assertEquals(message, expected.getEdgeTarget(expectedEdges.get(e)),
+                    actual.getEdgeTarget(actualEdges.get(e)));
+            assertEquals(message, expectedEdges.get(e).getWeight(), actualEdges.get(e).getWeight(), 0.0);
+        }
+    }
+
+    private static List<CallGraphNode> nodeList(ClassGraph graph) {
+        List<CallGraphNode> nodes = new ArrayList<>();
+        for (int v = 0; v < graph.getNumNodes(); v++) {
+            nodes.add(graph.getNode(v));
+        }
+        return nodes;
+    }
+
+    /** @return List<String> : Each edge as "source -> target labels weight". */
+    private static List<String> describe(ClassGraph graph) {
+        List<String> edges = new ArrayList<>();
+        for (int e = 0; e < graph.getNumEdges(); e++) {
+            edges.add(graph.getNode(graph.getSource(e)).getClassShortName() + " -> "
+                    + graph.getNode(graph.getTarget(e)).getClassShortName() + " " + graph.getSourceLabel(e) + " -> "
+                    + graph.getTargetLabel(e) + " " + graph.getWeight(e));
+        }
+        return edges;
+    }
+}
@@ -0,0 +1,98 @@
+package com.ibm.minerva.app2callgraph.entities;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.ibm.wala.core.util.strings.Atom;
+
+/**
+ * Graphs shared by the tests of {@link ClassGraph} and of the graph writers: a
+ * small hand-written graph, and random graphs checked over a range of seeds.
+ */
+public final class TestGraphs {
+
+    /** Number of seeds a randomized test is run with. */
+    public static final int SEEDS = 100;
+
+    // Characters the JSON exporter escapes, and some it does not.
+    private static final String[] NAME_PARTS = { "a", "Z", "9", "_", "$", "é", "中", "/", "\\", "\"" };
+
+    /** A check run once per seed. */
+    public interface SeededCheck {
+        void check(Random random) throws Exception;
+    }
+
+    private TestGraphs() {
+    }
+
+    /**
+     * Run a check with a random generator for each of {@link #SEEDS} seeds, and
+     * name the seed when it fails.
+     */
+    public static void forEachSeed(SeededCheck check) throws Exception {
+        for (long seed = 0; seed < SEEDS; seed++) {
+            try {
+                check.check(new Random(seed));
+            } catch (AssertionError e) {
+                throw new AssertionError("seed " + seed + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * @return ClassGraph : com.example.A (3 methods, 2 fields of which 1 static)
+     *         calls com.example.B$1 (private, 1 static method), with weight 1.0,
+     *         and com.example.B$1 calls com.example.A with weight 2.5.
+     */
+    public static ClassGraph smallGraph() {
+        ClassGraph graph = new ClassGraph(false);
+        int a = graph.addNode(new CallGraphNode("Lcom/example/A", false, 2, 1, 1, 0, 3));
+        int b = graph.addNode(new CallGraphNode("Lcom/example/B$1", true, 0, 0, 0, 1, 1));
+        graph.addEdge(a, b, Atom.findOrCreateUnicodeAtom("run"), Atom.findOrCreateUnicodeAtom("<init>"), 1.0);
+        graph.addEdge(b, a, Atom.findOrCreateUnicodeAtom("call"), Atom.findOrCreateUnicodeAtom("get"), 2.5);
+        return graph;
+    }
+
+    /**
+     * @return ClassGraph : Up to 30 classes whose names mix characters that need
+     *         escaping, and up to 100 edges (some of them self edges or repeated
+     *         class pairs) with distinct labels and weights of 1.0 or random.
+     */
+    public static ClassGraph randomGraph(Random random) {
+        ClassGraph graph = new ClassGraph(false);
+        int numNodes = 1 + random.nextInt(30);
+        for (int v = 0; v < numNodes; v++) {
+            StringBuilder name = new StringBuilder("Lcom/example/");
+            for (int i = random.nextInt(8); i >= 0; i--) {
+                name.append(NAME_PARTS[random.nextInt(NAME_PARTS.length)]);
+            }
+            graph.addNode(new CallGraphNode(name.toString() + v, random.nextBoolean(), random.nextInt(50),
+                    random.nextInt(10), random.nextInt(40), random.nextInt(10), random.nextInt(100)));
+        }
+        int numEdges = random.nextInt(100);
+        for (int e = 0; e < numEdges; e++) {
+            graph.addEdge(random.nextInt(numNodes), random.nextInt(numNodes), Atom.findOrCreateUnicodeAtom("m" + e),
+                    Atom.findOrCreateUnicodeAtom("n" + e), random.nextBoolean() ? 1.0 : random.nextDouble() * 10);
+        }
+        return graph;
+    }
+
+    /** @return List<CallGraphNode> : Classes com.example.C0 to C(n-1). */
+    public static List<CallGraphNode> classes(int n) {
+        List<CallGraphNode> nodes = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            nodes.add(new CallGraphNode("Lcom/example/C" + i, i % 2 == 0, i, 0, i, 0, i));
+        }
+        return nodes;
+    }
+
+    /** @return List<Atom> : Labels m0 to m(n-1). */
+    public static List<Atom> labels(int n) {
+        List<Atom> labels = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            labels.add(Atom.findOrCreateUnicodeAtom("m" + i));
+        }
+        return labels;
+    }
+}
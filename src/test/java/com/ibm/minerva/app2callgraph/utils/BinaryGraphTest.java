@@ -0,0 +1,179 @@
+/*
+Copyright IBM Corporation 2023
+
+Licensed under the Apache Public License 2.0, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ibm.minerva.app2callgraph.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.ibm.minerva.app2callgraph.entities.CallGraphNode;
+import com.ibm.minerva.app2callgraph.entities.ClassGraph;
+import com.ibm.minerva.app2callgraph.entities.TestGraphs;
+
+/**
+ * Round trips graphs through {@link BinaryGraphWriter} and
+ * {@link BinaryGraphReader}, and checks that damaged files are rejected.
+ */
+public class BinaryGraphTest {
+
+  private static final int SECTIONS = 4 * BinaryGraphWriter.HEADER_INTS;
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void smallGraphRoundTrips() throws Exception {
+    File file = tmp.newFile();
+    BinaryGraphWriter.write(TestGraphs.smallGraph(), file, "Heap budget of 1 MB exceeded.");
+    BinaryGraphReader reader = BinaryGraphReader.open(file);
+    assertFalse(reader.isComplete());
+    assertEquals("Heap budget of 1 MB exceeded.", reader.getIncompleteReason());
+    assertEquals(2, reader.getNumNodes());
+    assertEquals(2, reader.getNumEdges());
+    assertEquals("com.example.A", reader.getClassName(0));
+    assertFalse(reader.isPrivate(0));
+    assertEquals(2, reader.getNumFields(0));
+    assertEquals(1, reader.getNumStaticFields(0));
+    assertEquals(1, reader.getNumInstanceFields(0));
+    assertEquals(3, reader.getNumDeclaredMethods(0));
+    assertEquals(0, reader.getNumStaticMethods(0));
+    assertEquals("com.example.B$1", reader.getClassName(1));
+    assertTrue(reader.isPrivate(1));
+    assertEquals(1, reader.getNumStaticMethods(1));
+    // One edge out of each node: A -> B$1 weighs 1.0, B$1 -> A weighs 2.5.
+    assertEquals(1, reader.getEdgeEnd(0) - reader.getEdgeStart(0));
+    assertEquals(1, reader.getTarget(reader.getEdgeStart(0)));
+    assertEquals(1.0, reader.getWeight(reader.getEdgeStart(0)), 0.0);
+    assertEquals(1, reader.getEdgeEnd(1) - reader.getEdgeStart(1));
+    assertEquals(0, reader.getTarget(reader.getEdgeStart(1)));
+    assertEquals(2.5, reader.getWeight(reader.getEdgeStart(1)), 0.0);
+  }
+
+  @Test
+  public void randomGraphsRoundTrip() throws Exception {
+    TestGraphs.forEachSeed(random -> {
+      ClassGraph graph = TestGraphs.randomGraph(random);
+      String incompleteReason = random.nextBoolean() ? null
+          : "Heap budget of " + random.nextInt(100) + " MB exceeded.";
+      File file = tmp.newFile();
+      BinaryGraphWriter.write(graph, file, incompleteReason);
+      assertSameGraph(graph, incompleteReason, BinaryGraphReader.open(file));
+    });
+  }
+
+  @Test
+  public void emptyGraphRoundTrips() throws Exception {
+    File file = tmp.newFile();
+    BinaryGraphWriter.write(new ClassGraph(), file, null);
+    BinaryGraphReader reader = BinaryGraphReader.open(file);
+    assertEquals(0, reader.getNumNodes());
+    assertEquals(0, reader.getNumEdges());
+    assertNull(reader.getIncompleteReason());
+  }
+
+  @Test
+  public void truncatedFilesAreRejected() throws Exception {
+    byte[] bytes = write(TestGraphs.smallGraph());
+    for (int length = 0; length < bytes.length; length++) {
+      assertRejected("length " + length, Arrays.copyOf(bytes, length));
+    }
+  }
+
+  @Test
+  public void sectionsOutsideTheFileAreRejected() throws Exception {
+    byte[] bytes = write(TestGraphs.smallGraph());
+    for (int section = 0; section < BinaryGraphWriter.SECTIONS; section++) {
+      for (long offset : new long[] { -8, 0, bytes.length, Integer.MAX_VALUE, Long.MAX_VALUE }) {
+        byte[] damaged = bytes.clone();
+        ByteBuffer.wrap(damaged).putLong(SECTIONS + 8 * section, offset);
+        assertRejected("section " + section + " at " + offset, damaged);
+      }
+    }
+  }
+
+  @Test
+  public void countsOutsideTheFileAreRejected() throws Exception {
+    byte[] bytes = write(TestGraphs.smallGraph());
+    // Number of nodes, edges and strings, and the incomplete reason.
+    for (int field = 12; field <= 24; field += 4) {
+      for (int value : new int[] { -2, Integer.MAX_VALUE / 4, Integer.MAX_VALUE }) {
+        byte[] damaged = bytes.clone();
+        ByteBuffer.wrap(damaged).putInt(field, value);
+        assertRejected("header field " + field + " = " + value, damaged);
+      }
+    }
+  }
+
+  private byte[] write(ClassGraph graph) throws IOException {
+    File file = tmp.newFile();
+    BinaryGraphWriter.write(graph, file, null);
+    return Files.readAllBytes(file.toPath());
+  }
+
+  private void assertRejected(String message, byte[] bytes) throws IOException {
+    File file = tmp.newFile();
+    Files.write(file.toPath(), bytes);
+    try {
+      BinaryGraphReader.open(file);
+      fail(message + ": expected an IOException");
+    } catch (IOException e) {
+      // Expected.
+    }
+  }
+
+  private static void assertSameGraph(ClassGraph graph, String incompleteReason, BinaryGraphReader reader) {
+    assertEquals(graph.getNumNodes(), reader.getNumNodes());
+    assertEquals(graph.getNumEdges(), reader.getNumEdges());
+    assertEquals(incompleteReason == null, reader.isComplete());
+    assertEquals(incompleteReason, reader.getIncompleteReason());
+    List<List<Integer>> edgesOf = new ArrayList<>();
+    for (int v = 0; v < graph.getNumNodes(); v++) {
+      edgesOf.add(new ArrayList<>());
+    }
+    for (int e = 0; e < graph.getNumEdges(); e++) {
+      edgesOf.get(graph.getSource(e)).add(e);
+    }
+    for (int v = 0; v < graph.getNumNodes(); v++) {
+      CallGraphNode node = graph.getNode(v);
+      assertEquals(node.getClassName(), reader.getClassName(v));
+      assertEquals(node.getIsPrivate(), reader.isPrivate(v));
+      assertEquals((int) node.getNum_fields(), reader.getNumFields(v));
+      assertEquals((int) node.getNum_static_fields(), reader.getNumStaticFields(v));
+      assertEquals((int) node.getNum_instance_fields(), reader.getNumInstanceFields(v));
+      assertEquals((int) node.getNum_declared_methods(), reader.getNumDeclaredMethods(v));
+      assertEquals((int) node.getNum_static_methods(), reader.getNumStaticMethods(v));
+      List<Integer> edges = edgesOf.get(v);
+      assertEquals(edges.size(), reader.getEdgeEnd(v) - reader.getEdgeStart(v));
+      for (int i = 0; i < edges.size(); i++) {
+        int e = reader.getEdgeStart(v) + i;
+        assertEquals(graph.getTarget(edges.get(i)), reader.getTarget(e));
+        assertEquals(graph.getWeight(edges.get(i)), reader.getWeight(e), 0.0);
+      }
+    }
+  }
+}
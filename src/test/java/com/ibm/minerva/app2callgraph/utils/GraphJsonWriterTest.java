@@ -0,0 +1,91 @@
+/*
+Copyright IBM Corporation 2023
+
+Licensed under the Apache Public License 2.0, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ibm.minerva.app2callgraph.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.ibm.minerva.app2callgraph.CallGraphAnalysis;
+import com.ibm.minerva.app2callgraph.entities.ClassGraph;
+import com.ibm.minerva.app2callgraph.entities.TestGraphs;
+
+/**
+ * Checks that {@link GraphJsonWriter} writes complete random graphs byte for
+ * byte as the JGraphT JSON exporter does, and incomplete graphs, which the
+ * exporter cannot write, with the flag and reason ahead of the nodes.
+ */
+public class GraphJsonWriterTest {
+
+  private static final String INCOMPLETE_REASON = "Time budget of 60 seconds exceeded.\t\"é\"";
+  private static final String INCOMPLETE_JSON = "{\"creator\":\"JGraphT JSON Exporter\",\"version\":\"1\","
+      + "\"complete\":false,\"incomplete_reason\":\"Time budget of 60 seconds exceeded.\\t\\\"\\u00E9\\\"\","
+      + "\"nodes\":["
+      + "{\"id\":\"com.example.A\",\"is_class_private\":false,\"num_total_fields\":2,\"num_static_fields\":1,"
+      + "\"num_instance_fields\":1,\"num_total_methods\":3,\"num_static_methods\":0},"
+      + "{\"id\":\"com.example.B$1\",\"is_class_private\":true,\"num_total_fields\":0,\"num_static_fields\":0,"
+      + "\"num_instance_fields\":0,\"num_total_methods\":1,\"num_static_methods\":1}],"
+      + "\"edges\":["
+      + "{\"source\":\"com.example.A\",\"target\":\"com.example.B$1\",\"weight\":1.0},"
+      + "{\"source\":\"com.example.B$1\",\"target\":\"com.example.A\",\"weight\":2.5}]}";
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void smallGraphMatchesExporter() throws Exception {
+    assertSameBytes(TestGraphs.smallGraph());
+  }
+
+  @Test
+  public void randomGraphsMatchExporter() throws Exception {
+    TestGraphs.forEachSeed(random -> assertSameBytes(TestGraphs.randomGraph(random)));
+  }
+
+  @Test
+  public void incompleteGraphsCarryTheReason() throws Exception {
+    StringWriter out = new StringWriter();
+    GraphJsonWriter.write(TestGraphs.smallGraph(), out, INCOMPLETE_REASON);
+    assertEquals(INCOMPLETE_JSON, out.toString());
+  }
+
+  @Test
+  public void emptyGraphMatchesExporter() throws Exception {
+    assertSameBytes(new ClassGraph());
+  }
+
+  @Test
+  public void savedJGraphTGraphsKeepTheIncompleteFlag() throws Exception {
+    File dir = tmp.newFolder();
+    CallGraphAnalysis.saveGraph(TestGraphs.smallGraph().toGraph(), dir.getPath(), "partial.json", INCOMPLETE_REASON);
+    assertEquals(INCOMPLETE_JSON,
+        new String(Files.readAllBytes(new File(dir, "partial.json").toPath()), StandardCharsets.UTF_8));
+  }
+
+  private void assertSameBytes(ClassGraph graph) throws Exception {
+    File dir = tmp.newFolder();
+    CallGraphAnalysis.saveGraph(graph.toGraph(), dir.getPath(), "expected.json", null);
+    GraphJsonWriter.write(graph, new File(dir, "actual.json"), null);
+    assertArrayEquals(Files.readAllBytes(new File(dir, "expected.json").toPath()),
+        Files.readAllBytes(new File(dir, "actual.json").toPath()));
+  }
+}
@@ -0,0 +1,132 @@
+/*
+Copyright IBM Corporation 2023
+
+Licensed under the Apache Public License 2.0, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ibm.minerva.app2callgraph.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.ibm.minerva.app2callgraph.CallGraphAnalysis;
+
+/**
+ * Checks that {@link LibraryPruner} follows the classes of multi-release jars
+ * and that pruning the libraries of a demo application leaves its call graph
+ * as it is.
+ */
+public class LibraryPrunerTest {
+
+  private static final String APP = "daytrader8";
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  static class Referrer {
+    Target target;
+  }
+
+  static class Target {
+    Other other;
+  }
+
+  static class Other {
+  }
+
+  static class Unused {
+  }
+
+  @Test
+  public void versionedClassesAreFollowed() throws Exception {
+    File app = tmp.newFolder("app");
+    File referrer = new File(app, internalName(Referrer.class) + ".class");
+    referrer.getParentFile().mkdirs();
+    Files.write(referrer.toPath(), classBytes(Referrer.class));
+    String versioned = jar("versioned.jar", "META-INF/versions/9/" + internalName(Target.class) + ".class",
+        Target.class);
+    String other = jar("other.jar", internalName(Other.class) + ".class", Other.class);
+    String unused = jar("unused.jar", internalName(Unused.class) + ".class", Unused.class);
+
+    Log.setVerbosity(false);
+    LibraryPruner.Result result = LibraryPruner.prune(app.getPath(), Arrays.asList(versioned, other, unused));
+    assertEquals(Arrays.asList(versioned, other), result.getKeptLibs());
+  }
+
+  @Test
+  public void pruningKeepsTheDemoCallGraph() throws Exception {
+    File dir = new File(System.getProperty("app2callgraph.demo", "etc/demo"), APP);
+    File[] binaries = new File(dir, "binary").listFiles(File::isFile);
+    String libs = new File(dir, "dependencies").getPath();
+    Log.setVerbosity(false);
+    JSONObject unpruned = callGraph(binaries[0].getPath(), libs, false);
+    JSONObject pruned = callGraph(binaries[0].getPath(), libs, true);
+    assertEquals(elements(unpruned, "nodes"), elements(pruned, "nodes"));
+    assertEquals(elements(unpruned, "edges"), elements(pruned, "edges"));
+  }
+
+  private JSONObject callGraph(String input, String libs, boolean pruneLibs) throws Exception {
+    File out = tmp.newFolder();
+    CallGraphAnalysis.run(CallGraphAnalysis.Config.builder(input, out.getPath())
+        .extraLibs(libs)
+        .pruneLibs(pruneLibs)
+        .build());
+    return new JSONObject(new String(Files.readAllBytes(new File(out, "call_graph_rta.json").toPath()),
+        StandardCharsets.UTF_8));
+  }
+
+  /** @return Set<String> : The nodes or edges of a saved graph, in any order. */
+  private static Set<String> elements(JSONObject graph, String key) {
+    Set<String> elements = new HashSet<>();
+    JSONArray array = graph.getJSONArray(key);
+    for (int i = 0; i < array.length(); i++) {
+      elements.add(array.getJSONObject(i).toString());
+    }
+    return elements;
+  }
+
+  private String jar(String name, String entryName, Class<?> klass) throws IOException {
+    File file = new File(tmp.getRoot(), name);
+    try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file))) {
+      out.putNextEntry(new ZipEntry(entryName));
+      out.write(classBytes(klass));
+      out.closeEntry();
+    }
+    return file.getPath();
+  }
+
+  private static String internalName(Class<?> klass) {
+    return klass.getName().replace('.', '/');
+  }
+
+  private static byte[] classBytes(Class<?> klass) throws IOException {
+    try (InputStream in = klass.getResourceAsStream("/" + internalName(klass) + ".class")) {
+      return IOUtils.toByteArray(in);
+    }
+  }
+}